@@ -0,0 +1,149 @@
+package com.pdf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.PdfGeneratorApplication;
+import com.pdf.model.PdfJob;
+import com.pdf.service.PdfGenerator.BarcodeType;
+
+/**
+ * Starts the application for benchmarks and load tests: shipped templates,
+ * in-memory broker, random port, output directories in a temp folder.
+ */
+public final class BenchmarkContext {
+
+	public static final String TEMPLATE = "thymeleaf";
+	/** overlay render mode, its template.html is the same layout for html2pdf */
+	public static final String OVERLAY_TEMPLATE = "overlay";
+
+	private BenchmarkContext() {
+	}
+
+	/**
+	 * Start application, additional properties override the defaults.
+	 * 
+	 * @param properties
+	 * @return
+	 * @throws IOException
+	 */
+	public static ConfigurableApplicationContext start(String... properties) throws IOException {
+
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		File workDir = Files.createTempDirectory("pdf-benchmark").toFile();
+
+		return new SpringApplicationBuilder(PdfGeneratorApplication.class)
+				.properties(
+						"template-folder=" + new File("templates").getAbsolutePath() + "/",
+						"directory.barcode=" + workDir + "/barcode/",
+						"directory.pdf=" + workDir + "/pdf/",
+						"directory.shutdown=" + workDir + "/shutdown/",
+						"housekeeping.duration-hours=1",
+						"activemq.queue.name=pdf-generator",
+						"activemq.queue.error=pdf-generator-error",
+						"spring.activemq.in-memory=true",
+						"spring.activemq.broker-url=vm://localhost?broker.persistent=false",
+						"spring.jms.listener.auto-startup=false",
+						"template-watcher.enabled=false",
+						"resource-cache.enabled=false",
+						"result-cache.enabled=false",
+						"warmup.enabled=false",
+						"server.port=0")
+				.properties(properties)
+				.logStartupInfo(false)
+				.run();
+	}
+
+	/**
+	 * Sample voucher job of the shipped thymeleaf template.
+	 * 
+	 * @param mapper
+	 * @param id
+	 * @param barcodeType
+	 * @param barcode
+	 * @param barcodeRendering
+	 * @param returnUrl
+	 * @return
+	 * @throws IOException
+	 */
+	public static String sampleMessage(ObjectMapper mapper, String id, String barcodeType, String barcode,
+			String barcodeRendering, String returnUrl) throws IOException {
+		return sampleMessage(mapper, TEMPLATE, id, barcodeType, barcode, barcodeRendering, returnUrl);
+	}
+
+	/**
+	 * Sample voucher job of a shipped template.
+	 * 
+	 * @param mapper
+	 * @param templateName
+	 * @param id
+	 * @param barcodeType
+	 * @param barcode
+	 * @param barcodeRendering
+	 * @param returnUrl
+	 * @return
+	 * @throws IOException
+	 */
+	public static String sampleMessage(ObjectMapper mapper, String templateName, String id, String barcodeType,
+			String barcode, String barcodeRendering, String returnUrl) throws IOException {
+
+		Map<String, Object> message = new LinkedHashMap<>();
+		message.put("templateName", templateName);
+		message.put("language", "en");
+		message.put("filename", "voucher-" + id + ".pdf");
+		message.put("returnUrl", returnUrl);
+		message.put("orderId", "order-" + id);
+		message.put("positionId", "1");
+		message.put("voucherId", "voucher-" + id);
+		message.put("barcodeType", barcodeType);
+		message.put("barcode", barcode);
+		message.put("barcodeRendering", barcodeRendering);
+		message.put("voucherTitle", "Gift voucher");
+		message.put("offerTitle", "Dinner for two at the harbour restaurant");
+		message.put("voucherValidity", "Valid for 3 years");
+		message.put("salutation", "Ms");
+		message.put("firstname", "Jane");
+		message.put("lastname", "Doe");
+		message.put("company", "Example Ltd");
+		message.put("voucherHandling", "Show this voucher at the restaurant.");
+		message.put("currency", "EUR");
+		message.put("total", "50.00");
+		message.put("validTo", "31.12.2029");
+		message.put("onlineCode", "ONLINE-" + id);
+		message.put("onlineCodeDesc", "Online code");
+		message.put("pinCode", "4711");
+		message.put("pinCodeDesc", "PIN code");
+		message.put("conditions", "Not exchangeable for cash. One voucher per visit.");
+		message.put("offlineCode", barcode);
+		return mapper.writeValueAsString(message);
+	}
+
+	public static PdfJob sampleJob(ObjectMapper mapper, String barcodeType, String barcode, String barcodeRendering)
+			throws Exception {
+		return sampleJob(mapper, TEMPLATE, barcodeType, barcode, barcodeRendering);
+	}
+
+	public static PdfJob sampleJob(ObjectMapper mapper, String templateName, String barcodeType, String barcode,
+			String barcodeRendering) throws Exception {
+		return PdfJob.parse(mapper, sampleMessage(mapper, templateName, "1", barcodeType, barcode, barcodeRendering,
+				"http://localhost/unused"));
+	}
+
+	/**
+	 * Sample code per barcode type.
+	 * 
+	 * @param barcodeType
+	 * @return
+	 */
+	public static String sampleCode(String barcodeType) {
+		return BarcodeType.valueOf(barcodeType).sampleCode();
+	}
+}
@@ -0,0 +1,110 @@
+package com.pdf.benchmark;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.service.PdfGenerator;
+import com.pdf.service.PdfGeneratorEndToEndBenchmark;
+import com.pdf.service.RenderedPdf;
+
+/**
+ * Runs all benchmarks with the GC profiler, so allocation rate
+ * ({@code gc.alloc.rate.norm}) is reported next to throughput. Results are
+ * written to target/jmh-result.json; standard JMH command line options apply.
+ *
+ * After an end to end run the pdf size per template, barcode rendering and
+ * output profile is printed, CPU cost per document is the benchmark score. For
+ * the overlay template the CPU cut of the overlay mode against the html version
+ * of its layout is printed.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include("com\\.pdf\\..*Benchmark");
+		}
+		options.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-result.json");
+		Collection<RunResult> results = new Runner(options.build()).run();
+		reportPdfSizes(results);
+		reportOverlayCut(results);
+	}
+
+	private static void reportPdfSizes(Collection<RunResult> results) throws Exception {
+
+		// template / barcode rendering per output profile of the end to end runs
+		Map<String, TreeSet<String>> runs = new TreeMap<>();
+		for (RunResult result : results) {
+			BenchmarkParams params = result.getParams();
+			if (params.getBenchmark().startsWith(PdfGeneratorEndToEndBenchmark.class.getName())) {
+				runs.computeIfAbsent(params.getParam("outputProfile"), profile -> new TreeSet<>())
+						.add(params.getParam("template") + "/" + params.getParam("barcodeRendering"));
+			}
+		}
+		if (runs.isEmpty()) {
+			return;
+		}
+
+		System.out.println();
+		System.out.println("Pdf size per template / barcode rendering / output profile:");
+		for (Map.Entry<String, TreeSet<String>> run : runs.entrySet()) {
+			try (ConfigurableApplicationContext context = BenchmarkContext.start("output.profile=" + run.getKey())) {
+				PdfGenerator pdfGenerator = context.getBean(PdfGenerator.class);
+				ObjectMapper mapper = context.getBean(ObjectMapper.class);
+				for (String templateRendering : run.getValue()) {
+					String[] names = templateRendering.split("/");
+					try (RenderedPdf pdf = pdfGenerator.generatePdf(BenchmarkContext.sampleJob(mapper, names[0],
+							"C128", BenchmarkContext.sampleCode("C128"), names[1]))) {
+						System.out.println(String.format("%s / %s: %d bytes", templateRendering, run.getKey(),
+								pdf.getSize()));
+					}
+				}
+			}
+		}
+	}
+
+	private static void reportOverlayCut(Collection<RunResult> results) {
+
+		// ms per document of the overlay template by barcode rendering / output profile and benchmark
+		Map<String, Map<String, Double>> scores = new TreeMap<>();
+		for (RunResult result : results) {
+			BenchmarkParams params = result.getParams();
+			if (params.getBenchmark().startsWith(PdfGeneratorEndToEndBenchmark.class.getName())
+					&& BenchmarkContext.OVERLAY_TEMPLATE.equals(params.getParam("template"))) {
+				String method = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+				scores.computeIfAbsent(params.getParam("barcodeRendering") + " / " + params.getParam("outputProfile"),
+						run -> new TreeMap<>()).put(method, result.getPrimaryResult().getScore());
+			}
+		}
+		if (scores.isEmpty()) {
+			return;
+		}
+
+		System.out.println();
+		System.out.println("Overlay mode against html version of the layout, ms per document:");
+		for (Map.Entry<String, Map<String, Double>> run : scores.entrySet()) {
+			Double overlay = run.getValue().get("generatePdf");
+			Double html = run.getValue().get("renderHtml");
+			if (overlay != null && html != null && overlay > 0) {
+				System.out.println(String.format("%s: overlay %.3f, html %.3f, CPU cut %.1fx", run.getKey(), overlay,
+						html, html / overlay));
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package com.pdf.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.service.Sender;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * End to end load test: embedded broker, the full application and a stub
+ * receiver standing in for returnUrl.
+ *
+ * Messages are sent through {@link Sender#send(String)}, the stub records the
+ * arrival time per message. Messages arriving in the error queue count as
+ * completed, so failures do not stall the run until the timeout. Reported are throughput, latency percentiles from
+ * send to arrival, error queue count and peak heap usage.
+ *
+ * Configured by system properties:
+ * <ul>
+ * <li>{@code loadtest.messages} - number of messages (1000)</li>
+ * <li>{@code loadtest.concurrency} - listener concurrency (4-4)</li>
+ * <li>{@code loadtest.templates} - template mix, round robin (thymeleaf)</li>
+ * <li>{@code loadtest.barcode-types} - barcode type mix (C128,ECC200,PDF417)</li>
+ * <li>{@code loadtest.barcode-rendering} - raster or vector (raster)</li>
+ * <li>{@code loadtest.timeout-seconds} - max wait for all arrivals (600)</li>
+ * </ul>
+ */
+public class LoadTestHarness {
+
+	public static void main(String[] args) throws Exception {
+
+		int messages = Integer.getInteger("loadtest.messages", 1000);
+		String concurrency = System.getProperty("loadtest.concurrency", "4-4");
+		String[] templates = System.getProperty("loadtest.templates", BenchmarkContext.TEMPLATE).split(",");
+		String[] barcodeTypes = System.getProperty("loadtest.barcode-types", "C128,ECC200,PDF417").split(",");
+		String barcodeRendering = System.getProperty("loadtest.barcode-rendering", "raster");
+		int timeoutSeconds = Integer.getInteger("loadtest.timeout-seconds", 600);
+
+		long[] sentAt = new long[messages];
+		// written by the stub's handler threads
+		AtomicLongArray arrivedAt = new AtomicLongArray(messages);
+		AtomicIntegerArray completed = new AtomicIntegerArray(messages);
+		AtomicInteger errors = new AtomicInteger();
+		CountDownLatch arrivals = new CountDownLatch(messages);
+
+		// stub receiver, the message index is passed in the returnUrl
+		HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		stub.setExecutor(Executors.newFixedThreadPool(16));
+		stub.createContext("/upload", exchange -> receive(exchange, arrivedAt, completed, arrivals));
+		stub.start();
+		String returnUrl = "http://localhost:" + stub.getAddress().getPort() + "/upload?id=";
+
+		// peak heap usage
+		AtomicLong peakHeap = new AtomicLong();
+		ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+		heapSampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(
+				ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max), 0, 100,
+				TimeUnit.MILLISECONDS);
+
+		ConfigurableApplicationContext context = BenchmarkContext.start(
+				"spring.jms.listener.auto-startup=true",
+				"activemq.listener.concurrency=" + concurrency);
+		Connection errorConnection = null;
+		try {
+			ObjectMapper mapper = context.getBean(ObjectMapper.class);
+			errorConnection = consumeErrorQueue(context, mapper, completed, errors, arrivals);
+			Sender sender = context.getBean(Sender.class);
+
+			// generate payloads up front so serialization is not measured
+			String[] payloads = new String[messages];
+			for (int i = 0; i < messages; i++) {
+				String barcodeType = barcodeTypes[i % barcodeTypes.length].trim();
+				String message = BenchmarkContext.sampleMessage(mapper, Integer.toString(i), barcodeType,
+						BenchmarkContext.sampleCode(barcodeType), barcodeRendering, returnUrl + i);
+				payloads[i] = message.replace("\"templateName\":\"" + BenchmarkContext.TEMPLATE + "\"",
+						"\"templateName\":\"" + templates[i % templates.length].trim() + "\"");
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < messages; i++) {
+				sentAt[i] = System.nanoTime();
+				sender.send(payloads[i]);
+			}
+
+			boolean complete = arrivals.await(timeoutSeconds, TimeUnit.SECONDS);
+			long end = System.nanoTime();
+
+			report(messages, concurrency, start, end, complete, sentAt, arrivedAt, peakHeap.get(), errors.get());
+		} finally {
+			if (errorConnection != null) {
+				errorConnection.close();
+			}
+			context.close();
+			heapSampler.shutdownNow();
+			stub.stop(0);
+			System.exit(0);
+		}
+	}
+
+	private static void receive(HttpExchange exchange, AtomicLongArray arrivedAt, AtomicIntegerArray completed,
+			CountDownLatch arrivals) throws IOException {
+		long now = System.nanoTime();
+		try (InputStream body = exchange.getRequestBody()) {
+			body.transferTo(OutputStream.nullOutputStream());
+		}
+		int id = messageId(exchange.getRequestURI().getQuery());
+		if (arrivedAt.compareAndSet(id, 0, now) && completed.compareAndSet(id, 0, 1)) {
+			arrivals.countDown();
+		}
+		exchange.sendResponseHeaders(200, -1);
+		exchange.close();
+	}
+
+	/**
+	 * Consume the error queue, every failed message completes its index.
+	 * 
+	 * @return connection to close after the run
+	 * @throws JMSException
+	 */
+	private static Connection consumeErrorQueue(ConfigurableApplicationContext context, ObjectMapper mapper,
+			AtomicIntegerArray completed, AtomicInteger errors, CountDownLatch arrivals) throws JMSException {
+		String errorQueue = context.getEnvironment().getProperty("activemq.queue.error");
+		Connection connection = context.getBean(ConnectionFactory.class).createConnection();
+		Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		MessageConsumer consumer = session.createConsumer(session.createQueue(errorQueue));
+		consumer.setMessageListener(message -> {
+			errors.incrementAndGet();
+			try {
+				String returnUrl = mapper.readTree(((TextMessage) message).getText()).path("returnUrl").asText();
+				int id = messageId(returnUrl);
+				if (completed.compareAndSet(id, 0, 1)) {
+					arrivals.countDown();
+				}
+			} catch (JMSException | IOException | RuntimeException e) {
+				System.err.println("Error queue message without index - " + e);
+			}
+		});
+		connection.start();
+		return connection;
+	}
+
+	private static int messageId(String url) {
+		return Integer.parseInt(url.substring(url.lastIndexOf('=') + 1));
+	}
+
+	private static void report(int messages, String concurrency, long start, long end, boolean complete,
+			long[] sentAt, AtomicLongArray arrivedAt, long peakHeap, int errors) {
+
+		long[] latencies = new long[messages];
+		int delivered = 0;
+		for (int i = 0; i < messages; i++) {
+			if (arrivedAt.get(i) != 0) {
+				latencies[delivered++] = arrivedAt.get(i) - sentAt[i];
+			}
+		}
+		latencies = Arrays.copyOf(latencies, delivered);
+		Arrays.sort(latencies);
+
+		double seconds = (end - start) / 1e9;
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("concurrency", concurrency);
+		result.put("messages", messages);
+		result.put("delivered", delivered);
+		result.put("complete", complete);
+		result.put("errorQueue", errors);
+		result.put("seconds", String.format("%.2f", seconds));
+		result.put("throughput/s", String.format("%.1f", delivered / seconds));
+		result.put("p50 ms", percentile(latencies, 0.50));
+		result.put("p95 ms", percentile(latencies, 0.95));
+		result.put("p99 ms", percentile(latencies, 0.99));
+		result.put("max ms", percentile(latencies, 1.0));
+		result.put("peak heap MiB", peakHeap / (1024 * 1024));
+
+		System.out.println();
+		System.out.println("Load test result");
+		result.forEach((key, value) -> System.out.println(String.format("  %-14s %s", key, value)));
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+	}
+
+	private LoadTestHarness() {
+	}
+}
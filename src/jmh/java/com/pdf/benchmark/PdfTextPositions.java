@@ -0,0 +1,92 @@
+package com.pdf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+
+/**
+ * Compares where texts are drawn on the first page of two pdfs, e.g. the
+ * overlay and the html rendering of the same layout.
+ */
+public final class PdfTextPositions {
+
+	private static final float POINTS_PER_MM = 72f / 25.4f;
+
+	private PdfTextPositions() {
+	}
+
+	/**
+	 * Start of the baseline of every text on the first page, in points from the
+	 * bottom left corner. Only the first occurrence of a text is kept.
+	 * 
+	 * @param pdf
+	 * @return
+	 * @throws IOException
+	 */
+	public static Map<String, Vector> find(byte[] pdf) throws IOException {
+		Map<String, Vector> positions = new LinkedHashMap<>();
+		try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+			new PdfCanvasProcessor(new IEventListener() {
+				@Override
+				public void eventOccurred(IEventData data, EventType type) {
+					TextRenderInfo info = (TextRenderInfo) data;
+					String text = info.getText().trim();
+					if (!text.isEmpty()) {
+						positions.putIfAbsent(text, info.getBaseline().getStartPoint());
+					}
+				}
+
+				@Override
+				public Set<EventType> getSupportedEvents() {
+					return Set.of(EventType.RENDER_TEXT);
+				}
+			}).processPageContent(document.getFirstPage());
+		}
+		return positions;
+	}
+
+	/**
+	 * Deviations of texts between two pdfs larger than tolerance.
+	 * 
+	 * @param expected
+	 * @param actual
+	 * @param texts       texts to compare
+	 * @param toleranceMm
+	 * @return one line per missing or misplaced text, empty if all match
+	 * @throws IOException
+	 */
+	public static List<String> compare(byte[] expected, byte[] actual, Collection<String> texts, float toleranceMm)
+			throws IOException {
+		Map<String, Vector> expectedPositions = find(expected);
+		Map<String, Vector> actualPositions = find(actual);
+		List<String> deviations = new ArrayList<>();
+		for (String text : texts) {
+			Vector e = expectedPositions.get(text);
+			Vector a = actualPositions.get(text);
+			if (e == null || a == null) {
+				deviations.add(String.format("%s: missing in %s", text, e == null ? "expected" : "actual"));
+				continue;
+			}
+			float dx = Math.abs(e.get(Vector.I1) - a.get(Vector.I1)) / POINTS_PER_MM;
+			float dy = Math.abs(e.get(Vector.I2) - a.get(Vector.I2)) / POINTS_PER_MM;
+			if (dx > toleranceMm || dy > toleranceMm) {
+				deviations.add(String.format("%s: off by %.2f mm / %.2f mm", text, dx, dy));
+			}
+		}
+		return deviations;
+	}
+}
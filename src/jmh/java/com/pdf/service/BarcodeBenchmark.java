@@ -0,0 +1,76 @@
+package com.pdf.service;
+
+import java.awt.Image;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.pdf.benchmark.BenchmarkContext;
+import com.pdf.service.PdfGenerator.BarcodeType;
+
+/**
+ * Barcode generation per {@link BarcodeType}, uncached. The encoded png and
+ * svg sizes are printed once per type on setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class BarcodeBenchmark {
+
+	@Param({ "C39", "C128", "C128A", "EAN13", "EAN128", "ECC200", "PDF417" })
+	private String barcodeType;
+
+	private ConfigurableApplicationContext context;
+	private PdfGenerator pdfGenerator;
+	private BarcodeType type;
+	private String code;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		context = BenchmarkContext.start();
+		pdfGenerator = context.getBean(PdfGenerator.class);
+		type = BarcodeType.valueOf(barcodeType);
+		code = BenchmarkContext.sampleCode(barcodeType);
+
+		System.out.println(String.format("%n%s: png %d bytes, svg %d bytes", type,
+				pdfGenerator.generateBarcodePNG(type, code).length,
+				pdfGenerator.generateBarcodeSVG(type, code).getBytes(StandardCharsets.UTF_8).length));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Image createBarcodeImage() throws Exception {
+		return pdfGenerator.createBarcodeImage(type, code);
+	}
+
+	@Benchmark
+	public byte[] generateBarcodePNG() throws Exception {
+		return pdfGenerator.generateBarcodePNG(type, code);
+	}
+
+	@Benchmark
+	public String generateBarcodeSVG() throws Exception {
+		return pdfGenerator.generateBarcodeSVG(type, code);
+	}
+}
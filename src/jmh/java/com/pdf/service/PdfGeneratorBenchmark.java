@@ -0,0 +1,90 @@
+package com.pdf.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itextpdf.layout.font.FontProvider;
+import com.pdf.benchmark.BenchmarkContext;
+import com.pdf.cache.FontSetCache;
+import com.pdf.model.PdfJob;
+
+/**
+ * Per-stage benchmarks of {@link PdfGenerator} with the shipped thymeleaf
+ * template, see {@link PdfGeneratorEndToEndBenchmark} for the whole render.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PdfGeneratorBenchmark {
+
+	private ConfigurableApplicationContext context;
+	private PdfGenerator pdfGenerator;
+	private FontSetCache fontSetCache;
+	private TemplateEngine templateEngine;
+	private PdfJob job;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		context = BenchmarkContext.start();
+		pdfGenerator = context.getBean(PdfGenerator.class);
+		fontSetCache = context.getBean(FontSetCache.class);
+		templateEngine = context.getBean(TemplateEngine.class);
+		job = BenchmarkContext.sampleJob(context.getBean(ObjectMapper.class), "C128",
+				BenchmarkContext.sampleCode("C128"), null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public FontProvider createFontProvider() {
+		return pdfGenerator.createFontProvider(BenchmarkContext.TEMPLATE);
+	}
+
+	/**
+	 * Font provider without cached font set, i.e. the cost before the cache.
+	 * 
+	 * @return
+	 */
+	@Benchmark
+	public FontProvider createFontProviderUncached() {
+		fontSetCache.invalidate(BenchmarkContext.TEMPLATE);
+		return pdfGenerator.createFontProvider(BenchmarkContext.TEMPLATE);
+	}
+
+	@Benchmark
+	public Context loadAdditionalContent() throws Exception {
+		Context ctx = new Context();
+		pdfGenerator.loadAdditionalContent(ctx, job);
+		return ctx;
+	}
+
+	@Benchmark
+	public String thymeleaf() throws Exception {
+		Context ctx = new Context(job.getLocale());
+		ctx.setVariables(job.getVariables());
+		pdfGenerator.loadBarcode(ctx, job);
+		return templateEngine.process(BenchmarkContext.TEMPLATE + "/template", ctx);
+	}
+}
@@ -0,0 +1,113 @@
+package com.pdf.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.benchmark.BenchmarkContext;
+import com.pdf.benchmark.PdfTextPositions;
+import com.pdf.model.PdfJob;
+
+/**
+ * End to end benchmark of {@link PdfGenerator} per template, barcode rendering
+ * and output profile, reported as time per document. Benchmarks run on one
+ * thread, so the time per document is its CPU cost.
+ *
+ * {@code generatePdf} renders in the mode of the template, {@code renderHtml}
+ * always through Thymeleaf and html2pdf. For the {@code overlay} template the
+ * two are the overlay mode and the html version of the same layout
+ * (template.html); the setup checks that both place the fields within
+ * {@value #TOLERANCE_MM} mm, and the BenchmarkRunner reports the CPU cut. Pdf
+ * sizes are reported by the BenchmarkRunner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PdfGeneratorEndToEndBenchmark {
+
+	public static final float TOLERANCE_MM = 1.5f;
+
+	@Param({ BenchmarkContext.TEMPLATE, BenchmarkContext.OVERLAY_TEMPLATE })
+	private String template;
+
+	@Param({ "RASTER", "VECTOR" })
+	private String barcodeRendering;
+
+	@Param({ OutputProfiles.DEFAULT, OutputProfiles.COMPACT })
+	private String outputProfile;
+
+	private ConfigurableApplicationContext context;
+	private PdfGenerator pdfGenerator;
+	private PdfJob job;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		context = BenchmarkContext.start("output.profile=" + outputProfile);
+		pdfGenerator = context.getBean(PdfGenerator.class);
+		job = BenchmarkContext.sampleJob(context.getBean(ObjectMapper.class), template, "C128",
+				BenchmarkContext.sampleCode("C128"), barcodeRendering);
+		if (BenchmarkContext.OVERLAY_TEMPLATE.equals(template)) {
+			compareOverlayWithHtml();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public long generatePdf() throws Exception {
+		try (RenderedPdf pdf = pdfGenerator.generatePdf(job)) {
+			return pdf.getSize();
+		}
+	}
+
+	@Benchmark
+	public long renderHtml() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		pdfGenerator.renderHtml(job, os);
+		return os.size();
+	}
+
+	/**
+	 * The overlay must place the fields like the html version of the layout.
+	 *
+	 * @throws Exception
+	 */
+	private void compareOverlayWithHtml() throws Exception {
+		byte[] overlay;
+		try (RenderedPdf pdf = pdfGenerator.generatePdf(job); InputStream is = pdf.openStream()) {
+			overlay = is.readAllBytes();
+		}
+		ByteArrayOutputStream html = new ByteArrayOutputStream();
+		pdfGenerator.renderHtml(job, html);
+
+		List<String> fields = List.of(job.getVariables().get("firstname").toString(),
+				job.getVariables().get("lastname").toString(), job.getVariables().get("pinCode").toString());
+		List<String> deviations = PdfTextPositions.compare(html.toByteArray(), overlay, fields, TOLERANCE_MM);
+		if (!deviations.isEmpty()) {
+			throw new IllegalStateException("Overlay differs from html rendering - " + deviations);
+		}
+	}
+}
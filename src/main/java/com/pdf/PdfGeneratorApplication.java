@@ -1,17 +1,30 @@
 package com.pdf;
 
+import java.util.Map;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.activemq.ActiveMQSession;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.thymeleaf.spring5.SpringTemplateEngine;
 import org.thymeleaf.templateresolver.FileTemplateResolver;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.cache.TemplateCacheManager;
+import com.pdf.service.AcknowledgingListenerContainer;
+import com.pdf.service.Acknowledgements;
+import com.pdf.service.InFlightTracker;
+import com.pdf.service.PositionDialect;
 
 @SpringBootApplication
 @EnableJms
@@ -21,7 +34,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class PdfGeneratorApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(PdfGeneratorApplication.class, args);
+		SpringApplication application = new SpringApplication(PdfGeneratorApplication.class);
+		// expose render metrics unless configured otherwise, warm-up only affects
+		// the readiness group, not the overall health used by liveness probes
+		application.setDefaultProperties(Map.of(
+				"management.endpoints.web.exposure.include", "health,info,metrics,prometheus",
+				"management.endpoint.health.status.order", "DOWN,OUT_OF_SERVICE,UP,WARMING_UP,UNKNOWN",
+				"management.endpoint.health.group.readiness.include", "warmup",
+				"management.endpoint.health.group.readiness.status.order",
+				"DOWN,OUT_OF_SERVICE,WARMING_UP,UP,UNKNOWN",
+				"management.endpoint.health.group.readiness.status.http-mapping.WARMING_UP", "503"));
+		application.run(args);
 	}
 	
 	@Bean
@@ -29,8 +52,49 @@ public class PdfGeneratorApplication {
 		return new ObjectMapper();
 	}
 	
+	@Value("${warmup.enabled:true}")
+	private boolean warmupEnabled;
+	
+	/**
+	 * Listener container factory acknowledging messages individually: a message
+	 * is acknowledged only after its pdf was delivered, by the listener thread
+	 * that received it, see AcknowledgingListenerContainer. Consumers are cached
+	 * so the session of a handed-over message stays open until it is
+	 * acknowledged, see ListenerConcurrencyManager for pinned consumer counts.
+	 * With warm-up enabled the listeners are started by the WarmupService.
+	 * 
+	 * @param connectionFactory
+	 * @param configurer
+	 * @param acknowledgements
+	 * @param inFlightTracker
+	 * @return
+	 */
+	@Bean
+	public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(ConnectionFactory connectionFactory,
+			DefaultJmsListenerContainerFactoryConfigurer configurer, Acknowledgements acknowledgements,
+			InFlightTracker inFlightTracker) {
+		DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory() {
+			@Override
+			protected DefaultMessageListenerContainer createContainerInstance() {
+				return new AcknowledgingListenerContainer(acknowledgements, inFlightTracker);
+			}
+		};
+		configurer.configure(factory, connectionFactory);
+		factory.setSessionTransacted(false);
+		factory.setSessionAcknowledgeMode(ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
+		factory.setCacheLevel(DefaultMessageListenerContainer.CACHE_CONSUMER);
+		if (warmupEnabled) {
+			factory.setAutoStartup(false);
+		}
+		return factory;
+	}
+	
 	@Value("${template-folder}")
 	private String templateFolder;
+	@Value("${template-cache.enabled:true}")
+	private boolean templateCacheEnabled;
+	@Value("${template-cache.max-size:200}")
+	private int templateCacheMaxSize;
 	
 	@Bean
 	public FileTemplateResolver templateResolver() {
@@ -41,15 +105,22 @@ public class PdfGeneratorApplication {
 		templateResolver.setCharacterEncoding("UTF-8");
 		templateResolver.setCheckExistence(true);
 		templateResolver.setOrder(1);
-		templateResolver.setCacheable(false);
+		templateResolver.setCacheable(templateCacheEnabled);
 		templateResolver.setName("templateResolver");
 		return templateResolver;
 	}
 	
+	@Bean
+	public TemplateCacheManager templateCacheManager() {
+		return new TemplateCacheManager(templateCacheMaxSize);
+	}
+	
 	@Bean
 	public SpringTemplateEngine templateEngine() {
 		SpringTemplateEngine templateEngine = new SpringTemplateEngine();
 		templateEngine.setTemplateResolver(templateResolver());
+		templateEngine.setCacheManager(templateCacheManager());
+		templateEngine.addDialect(new PositionDialect());
 		return templateEngine;
 	}
 	
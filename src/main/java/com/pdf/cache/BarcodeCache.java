@@ -0,0 +1,89 @@
+package com.pdf.cache;
+
+import java.util.Objects;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.pdf.service.PdfGenerator.BarcodeRendering;
+import com.pdf.service.PdfGenerator.BarcodeType;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Cache of rendered barcodes by BarcodeType, rendering, scale and code.
+ *
+ * Redelivered and duplicate messages render identical codes, so the encoded
+ * png or svg markup is kept in an LRU bounded by its encoded length.
+ */
+@Component
+public class BarcodeCache implements MeterBinder {
+
+	@Value("${barcode-cache.max-bytes:16777216}")
+	private long maxBytes;
+
+	private LruCache<BarcodeKey, String> cache;
+
+	@PostConstruct
+	public void init() {
+		cache = new LruCache<>(maxBytes, String::length);
+	}
+
+	/**
+	 * Get cached barcode.
+	 * 
+	 * @param type
+	 * @param rendering
+	 * @param scale     scale factor of png, 0 for svg
+	 * @param code
+	 * @return
+	 */
+	public String get(BarcodeType type, BarcodeRendering rendering, int scale, String code) {
+		return cache.get(new BarcodeKey(type, rendering, scale, code));
+	}
+
+	public void put(BarcodeType type, BarcodeRendering rendering, int scale, String code, String barcode) {
+		cache.put(new BarcodeKey(type, rendering, scale, code), barcode);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		cache.bindTo(registry, "pdf.cache.barcodes");
+	}
+
+	private static final class BarcodeKey {
+
+		private final BarcodeType type;
+		private final BarcodeRendering rendering;
+		private final int scale;
+		private final String code;
+
+		BarcodeKey(BarcodeType type, BarcodeRendering rendering, int scale, String code) {
+			this.type = type;
+			this.rendering = rendering;
+			this.scale = scale;
+			this.code = code;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof BarcodeKey)) {
+				return false;
+			}
+			BarcodeKey other = (BarcodeKey) obj;
+			return type == other.type && rendering == other.rendering && scale == other.scale
+					&& code.equals(other.code);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(type, rendering, scale, code);
+		}
+	}
+}
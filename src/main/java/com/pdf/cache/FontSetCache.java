@@ -0,0 +1,129 @@
+package com.pdf.cache;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+import com.pdf.service.TemplateChangedEvent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Per-template cache of loaded font sets.
+ *
+ * Building a {@link DefaultFontProvider} registers the standard fonts, scans the
+ * system fonts and adds every file of the template font folder. The resulting
+ * {@link FontSet} is immutable after loading and can be shared, while a
+ * {@link FontProvider} holds per-document state and is created for every pdf.
+ * Font sets are invalidated by {@link TemplateChangedEvent}.
+ */
+@Log4j2
+@Component
+public class FontSetCache implements MeterBinder {
+
+	/** fallback family of html2pdf's DefaultFontProvider */
+	private static final String DEFAULT_FONT_FAMILY = "Times";
+
+	@Value("${template-folder}")
+	private String templateFolder;
+
+	private final Map<String, FontSet> cache = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create FontProvider for template backed by the cached font set. The default
+	 * family is Times like in {@link DefaultFontProvider}, so text without a
+	 * resolved font renders as before.
+	 *
+	 * @param templateName
+	 * @return
+	 */
+	public FontProvider createFontProvider(String templateName) {
+		return new FontProvider(getFontSet(templateName), DEFAULT_FONT_FAMILY);
+	}
+
+	/**
+	 * Get font set for template, loaded on first use and kept until the template
+	 * changes.
+	 *
+	 * @param templateName
+	 * @return
+	 */
+	public FontSet getFontSet(String templateName) {
+
+		FontSet fontSet = cache.get(templateName);
+		if (fontSet != null) {
+			hits.incrementAndGet();
+			return fontSet;
+		}
+
+		// computeIfAbsent() serializes concurrent loads of the same template
+		return cache.computeIfAbsent(templateName, key -> {
+			misses.incrementAndGet();
+			return loadFontSet(new File(templateFolder + key + "/fonts"));
+		});
+	}
+
+	/**
+	 * Remove cached font set of template.
+	 *
+	 * @param templateName
+	 */
+	public void invalidate(String templateName) {
+		cache.remove(templateName);
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		cache.keySet().removeIf(event::affects);
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("pdf.cache.fonts.hits", hits, AtomicLong::get).register(registry);
+		FunctionCounter.builder("pdf.cache.fonts.misses", misses, AtomicLong::get).register(registry);
+		Gauge.builder("pdf.cache.fonts.size", cache, Map::size).register(registry);
+	}
+
+	private FontSet loadFontSet(File fontFolder) {
+
+		FontProvider fontProvider = new DefaultFontProvider(true, true, true);
+
+		log.info("Load fonts ...");
+
+		File[] fonts = fontFolder.listFiles();
+		if (fonts != null) {
+			for (File font : fonts) {
+
+				log.info("Load font - {}", font.getPath());
+
+				if (!fontProvider.addFont(font.getAbsolutePath())) {
+					log.error("Font could not be loaded - {}", font);
+				}
+			}
+		}
+		return fontProvider.getFontSet();
+	}
+}
@@ -0,0 +1,137 @@
+package com.pdf.cache;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.io.codec.Base64;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Downsamples image data uris wider than a maximum width and re-encodes them:
+ * opaque images as jpeg, images with alpha as png.
+ *
+ * Results are cached by a hash of the image data, width and quality, so a
+ * changed image behind the same url is downsampled again. If the result is not
+ * smaller the original image is kept.
+ */
+@Log4j2
+@Component
+public class ImageDownsampler implements MeterBinder {
+
+	private static final String BASE64 = ";base64,";
+
+	@Value("${image-downsampling.cache.max-bytes:33554432}")
+	private long maxBytes;
+
+	private LruCache<String, String> cache;
+
+	@PostConstruct
+	public void init() {
+		cache = new LruCache<>(maxBytes, String::length);
+	}
+
+	/**
+	 * Downsample image.
+	 *
+	 * @param url        url of the image, for logging
+	 * @param dataUri
+	 * @param maxWidthPx
+	 * @param quality    jpeg quality 0-1
+	 * @return downsampled or original data uri
+	 */
+	public String downsample(String url, String dataUri, int maxWidthPx, float quality) {
+
+		String key = DigestUtils.sha256Hex(dataUri) + '|' + maxWidthPx + '|' + quality;
+		String downsampled = cache.get(key);
+		if (downsampled == null) {
+			try {
+				downsampled = resize(dataUri, maxWidthPx, quality);
+			} catch (IOException | RuntimeException e) {
+				log.warn("Image could not be downsampled - {} - {}", url, e.getMessage());
+				downsampled = dataUri;
+			}
+			cache.put(key, downsampled);
+		}
+		return downsampled;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		cache.bindTo(registry, "pdf.cache.downsampled");
+	}
+
+	private String resize(String dataUri, int maxWidthPx, float quality) throws IOException {
+
+		int data = dataUri.indexOf(BASE64);
+		if (!dataUri.startsWith("data:") || data < 0) {
+			return dataUri;
+		}
+
+		byte[] original = Base64.decode(dataUri.substring(data + BASE64.length()));
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+		if (image == null || image.getWidth() <= maxWidthPx) {
+			return dataUri;
+		}
+
+		int width = maxWidthPx;
+		int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+		boolean alpha = image.getColorModel().hasAlpha();
+
+		BufferedImage scaled = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = scaled.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+
+		String format = alpha ? "png" : "jpeg";
+		String downsampled = "data:image/" + format + BASE64 + Base64.encodeBytes(encode(scaled, format, quality));
+		log.debug("Image downsampled from {}x{} to {}x{}", image.getWidth(), image.getHeight(), width, height);
+		return downsampled.length() < dataUri.length() ? downsampled : dataUri;
+	}
+
+	private static byte[] encode(BufferedImage image, String format, float quality) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext()) {
+			throw new IOException("No image writer - " + format.toUpperCase(Locale.ROOT));
+		}
+		ImageWriter writer = writers.next();
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(os)) {
+			writer.setOutput(ios);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (param.canWriteCompressed() && "jpeg".equals(format)) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(quality);
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return os.toByteArray();
+	}
+}
@@ -0,0 +1,173 @@
+package com.pdf.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Thread-safe LRU cache bounded by the summed weight of its values.
+ *
+ * Every value is weighed once on insertion (entry count, bytes, ...). When the
+ * budget is exceeded the least recently used entries are evicted. Values heavier
+ * than the whole budget are not cached at all.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class LruCache<K, V> {
+
+	private final long maxWeight;
+	private final ToLongFunction<? super V> weigher;
+
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * LRU cache bounded by entry count.
+	 *
+	 * @param maxSize
+	 */
+	public LruCache(long maxSize) {
+		this(maxSize, value -> 1);
+	}
+
+	/**
+	 * LRU cache bounded by the weight of its values.
+	 *
+	 * @param maxWeight
+	 * @param weigher
+	 */
+	public LruCache(long maxWeight, ToLongFunction<? super V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if (value == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return value;
+	}
+
+	/**
+	 * Get value if it is still valid, an invalid value is removed and counted as
+	 * miss.
+	 *
+	 * @param key
+	 * @param valid
+	 * @return
+	 */
+	public synchronized V get(K key, Predicate<? super V> valid) {
+		V value = entries.get(key);
+		if (value != null && !valid.test(value)) {
+			remove(key);
+			value = null;
+		}
+		if (value == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		long valueWeight = weigher.applyAsLong(value);
+		remove(key);
+		if (valueWeight > maxWeight) {
+			return;
+		}
+		entries.put(key, value);
+		weight += valueWeight;
+
+		Iterator<V> iterator = entries.values().iterator();
+		while (weight > maxWeight && iterator.hasNext()) {
+			weight -= weigher.applyAsLong(iterator.next());
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized V remove(K key) {
+		V value = entries.remove(key);
+		if (value != null) {
+			weight -= weigher.applyAsLong(value);
+		}
+		return value;
+	}
+
+	public synchronized void removeIf(Predicate<? super K> predicate) {
+		Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<K, V> entry = iterator.next();
+			if (predicate.test(entry.getKey())) {
+				weight -= weigher.applyAsLong(entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized Set<K> keySet() {
+		return new LinkedHashSet<>(entries.keySet());
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long weight() {
+		return weight;
+	}
+
+	public synchronized long hitCount() {
+		return hits;
+	}
+
+	public synchronized long missCount() {
+		return misses;
+	}
+
+	public synchronized long evictionCount() {
+		return evictions;
+	}
+
+	public synchronized double hitRatio() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/**
+	 * Register size, weight, hit/miss/eviction meters under the given prefix.
+	 *
+	 * @param registry
+	 * @param prefix
+	 */
+	public void bindTo(MeterRegistry registry, String prefix) {
+		Gauge.builder(prefix + ".size", this, LruCache::size).register(registry);
+		Gauge.builder(prefix + ".weight", this, LruCache::weight).register(registry);
+		Gauge.builder(prefix + ".hit.ratio", this, LruCache::hitRatio).register(registry);
+		FunctionCounter.builder(prefix + ".hits", this, LruCache::hitCount).register(registry);
+		FunctionCounter.builder(prefix + ".misses", this, LruCache::missCount).register(registry);
+		FunctionCounter.builder(prefix + ".evictions", this, LruCache::evictionCount).register(registry);
+	}
+}
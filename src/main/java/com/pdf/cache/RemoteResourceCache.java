@@ -0,0 +1,331 @@
+package com.pdf.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.io.codec.Base64;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache of remote images referenced by template variables (thumbnailUrl,
+ * imageUrl, ...).
+ *
+ * Images are fetched once and handed to the template as data uri, so html2pdf
+ * does not download them again for every pdf. Entries live in an in-memory LRU
+ * bounded by size and optionally in a directory on disk. After
+ * {@code resource-cache.ttl-ms} an entry is revalidated with If-None-Match /
+ * If-Modified-Since; if the server is unreachable the stale entry is used.
+ * Concurrent requests for the same url share one fetch. A failed fetch without
+ * cached entry is remembered for {@code resource-cache.failure-ttl-ms}, so jobs
+ * do not wait for the same timeout again while a host is down.
+ */
+@Log4j2
+@Component
+public class RemoteResourceCache implements MeterBinder {
+
+	@Value("${resource-cache.enabled:true}")
+	private boolean enabled;
+	@Value("${resource-cache.variables:thumbnailUrl,imageUrl}")
+	private String[] variables;
+	@Value("${resource-cache.max-bytes:67108864}")
+	private long maxBytes;
+	@Value("${resource-cache.max-resource-bytes:5242880}")
+	private long maxResourceBytes;
+	@Value("${resource-cache.ttl-ms:3600000}")
+	private long ttl;
+	@Value("${resource-cache.connect-timeout-ms:3000}")
+	private int connectTimeout;
+	@Value("${resource-cache.socket-timeout-ms:10000}")
+	private int socketTimeout;
+	@Value("${resource-cache.failure-ttl-ms:60000}")
+	private long failureTtl;
+	@Value("${resource-cache.disk-dir:}")
+	private String diskDir;
+
+	private LruCache<String, Resource> cache;
+	/** time of the last failed fetch by url */
+	private final LruCache<String, Long> failures = new LruCache<>(1000);
+	private final Map<String, CompletableFuture<Resource>> inFlight = new ConcurrentHashMap<>();
+	private CloseableHttpClient client;
+
+	@PostConstruct
+	public void init() throws IOException {
+		cache = new LruCache<>(maxBytes, resource -> resource.dataUri.length());
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				.build();
+		client = HttpClients.custom()
+				.setDefaultRequestConfig(requestConfig)
+				.setMaxConnTotal(50)
+				.setMaxConnPerRoute(10)
+				.build();
+
+		if (StringUtils.isNotBlank(diskDir)) {
+			Files.createDirectories(Paths.get(diskDir));
+		}
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		client.close();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Names of template variables holding remote image urls.
+	 *
+	 * @return
+	 */
+	public String[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * Get data uri of remote resource, fetching or revalidating it if necessary.
+	 *
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	public String getDataUri(String url) throws IOException {
+
+		Resource cached = cache.get(url);
+		if (cached == null) {
+			cached = loadFromDisk(url);
+			if (cached != null) {
+				cache.put(url, cached);
+			}
+		}
+		long now = System.currentTimeMillis();
+		if (cached != null && now - cached.fetchedAt < ttl) {
+			return cached.dataUri;
+		}
+		if (cached == null && failures.get(url, failedAt -> now - failedAt < failureTtl) != null) {
+			throw new IOException("Resource failed recently, not fetched again - " + url);
+		}
+
+		// share one fetch between concurrent requests of the same url
+		CompletableFuture<Resource> future = new CompletableFuture<>();
+		CompletableFuture<Resource> running = inFlight.putIfAbsent(url, future);
+		if (running != null) {
+			try {
+				return running.join().dataUri;
+			} catch (CompletionException e) {
+				if (cached != null) {
+					return cached.dataUri;
+				}
+				throw new IOException("Resource could not be loaded - " + url, e.getCause());
+			}
+		}
+
+		try {
+			Resource fetched = fetch(url, cached);
+			cache.put(url, fetched);
+			failures.remove(url);
+			future.complete(fetched);
+			return fetched.dataUri;
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+			if (cached != null) {
+				log.warn("Resource could not be revalidated, use cached version - {} - {}", url, e.getMessage());
+				return cached.dataUri;
+			}
+			failures.put(url, System.currentTimeMillis());
+			throw e;
+		} finally {
+			inFlight.remove(url, future);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		cache.bindTo(registry, "pdf.cache.resources");
+	}
+
+	private Resource fetch(String url, Resource cached) throws IOException {
+
+		HttpGet get = new HttpGet(url);
+		if (cached != null && cached.etag != null) {
+			get.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+		}
+		if (cached != null && cached.lastModified != null) {
+			get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+		}
+
+		log.info("Load remote resource - {}", url);
+
+		try (CloseableHttpResponse response = client.execute(get)) {
+			int status = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+
+			if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+				EntityUtils.consume(entity);
+				Resource revalidated = cached.revalidated(System.currentTimeMillis());
+				storeOnDisk(url, revalidated, null);
+				return revalidated;
+			}
+			if (status != HttpStatus.SC_OK || entity == null) {
+				EntityUtils.consume(entity);
+				throw new IOException("Unexpected response " + response.getStatusLine() + " - " + url);
+			}
+
+			ContentType contentType = ContentType.get(entity);
+			String mimeType = contentType == null ? null : contentType.getMimeType();
+			if (mimeType == null || !mimeType.startsWith("image/")) {
+				EntityUtils.consume(entity);
+				throw new IOException("Resource is not an image (" + mimeType + ") - " + url);
+			}
+
+			byte[] data = read(entity, url);
+			Resource resource = new Resource(mimeType, data, header(response, HttpHeaders.ETAG),
+					header(response, HttpHeaders.LAST_MODIFIED), System.currentTimeMillis());
+			storeOnDisk(url, resource, data);
+			return resource;
+		}
+	}
+
+	private byte[] read(HttpEntity entity, String url) throws IOException {
+		if (entity.getContentLength() > maxResourceBytes) {
+			// not consumed, closing the response drops the connection
+			throw new IOException("Resource exceeds " + maxResourceBytes + " bytes - " + url);
+		}
+		try (InputStream is = entity.getContent()) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				os.write(buffer, 0, read);
+				if (os.size() > maxResourceBytes) {
+					throw new IOException("Resource exceeds " + maxResourceBytes + " bytes - " + url);
+				}
+			}
+			return os.toByteArray();
+		}
+	}
+
+	private static String header(CloseableHttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	private Resource loadFromDisk(String url) {
+		if (StringUtils.isBlank(diskDir)) {
+			return null;
+		}
+		Path data = diskPath(url, ".bin");
+		Path meta = diskPath(url, ".properties");
+		if (!Files.isRegularFile(data) || !Files.isRegularFile(meta)) {
+			return null;
+		}
+		try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+			Properties properties = new Properties();
+			properties.load(reader);
+			return new Resource(properties.getProperty("contentType"), Files.readAllBytes(data),
+					properties.getProperty("etag"), properties.getProperty("lastModified"),
+					Long.parseLong(properties.getProperty("fetchedAt", "0")));
+		} catch (IOException | RuntimeException e) {
+			log.warn("Cached resource could not be read - {} - {}", url, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Store resource on disk, data {@code null} only updates the metadata.
+	 */
+	private void storeOnDisk(String url, Resource resource, byte[] data) {
+		if (StringUtils.isBlank(diskDir)) {
+			return;
+		}
+		Properties properties = new Properties();
+		properties.setProperty("url", url);
+		properties.setProperty("contentType", resource.contentType);
+		properties.setProperty("fetchedAt", Long.toString(resource.fetchedAt));
+		if (resource.etag != null) {
+			properties.setProperty("etag", resource.etag);
+		}
+		if (resource.lastModified != null) {
+			properties.setProperty("lastModified", resource.lastModified);
+		}
+		try {
+			if (data != null) {
+				Files.write(diskPath(url, ".bin"), data);
+			}
+			try (Writer writer = Files.newBufferedWriter(diskPath(url, ".properties"), StandardCharsets.UTF_8)) {
+				properties.store(writer, null);
+			}
+		} catch (IOException e) {
+			log.warn("Resource could not be stored on disk - {} - {}", url, e.getMessage());
+		}
+	}
+
+	private Path diskPath(String url, String suffix) {
+		return new File(diskDir, DigestUtils.sha256Hex(url) + suffix).toPath();
+	}
+
+	private static final class Resource {
+
+		private final String contentType;
+		private final String dataUri;
+		private final String etag;
+		private final String lastModified;
+		private final long fetchedAt;
+
+		Resource(String contentType, byte[] data, String etag, String lastModified, long fetchedAt) {
+			this(contentType, "data:" + contentType + ";base64," + Base64.encodeBytes(data), etag, lastModified,
+					fetchedAt);
+		}
+
+		private Resource(String contentType, String dataUri, String etag, String lastModified, long fetchedAt) {
+			this.contentType = contentType;
+			this.dataUri = dataUri;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.fetchedAt = fetchedAt;
+		}
+
+		Resource revalidated(long now) {
+			return new Resource(contentType, dataUri, etag, lastModified, now);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.pdf.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.pdf.model.PdfJob;
+import com.pdf.service.PdfGenerator.BarcodeRendering;
+import com.pdf.service.RenderedPdf;
+import com.pdf.service.TemplateChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache of recently generated pdfs keyed by the SHA-256 of the effective job
+ * input: template, template version, all variables as canonical json, locale
+ * and barcode rendering.
+ *
+ * Redelivered or resent messages are not rendered again, only delivered. The
+ * cache is bounded by the summed pdf size and by age; pdfs spilled to disk are
+ * not cached. Every template change starts a new template version, so results
+ * of jobs rendered before the change are neither used nor stored.
+ */
+@Log4j2
+@Component
+public class RenderResultCache implements MeterBinder {
+
+	@Value("${result-cache.enabled:true}")
+	private boolean enabled;
+	@Value("${result-cache.max-bytes:67108864}")
+	private long maxBytes;
+	@Value("${result-cache.ttl-ms:600000}")
+	private long ttl;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	private final AtomicLong templateVersion = new AtomicLong();
+
+	private LruCache<ResultKey, Result> cache;
+	private ObjectWriter canonicalWriter;
+
+	@PostConstruct
+	public void init() {
+		cache = new LruCache<>(maxBytes, result -> result.data.length);
+		canonicalWriter = mapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+	}
+
+	/**
+	 * Compute key of job.
+	 *
+	 * @param job
+	 * @param rendering resolved barcode rendering
+	 * @return key, {@code null} if the cache is disabled
+	 * @throws IOException
+	 */
+	public ResultKey key(PdfJob job, BarcodeRendering rendering) throws IOException {
+		if (!enabled) {
+			return null;
+		}
+
+		long version = templateVersion.get();
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		digest.update((job.getTemplateName() + '\n' + version + '\n' + job.getLocale().toLanguageTag() + '\n'
+				+ rendering + '\n').getBytes(StandardCharsets.UTF_8));
+		digest.update(canonicalWriter.writeValueAsBytes(job.getVariables()));
+		return new ResultKey(job.getTemplateName(), Hex.encodeHexString(digest.digest()), version);
+	}
+
+	/**
+	 * Get cached pdf for key, named after the filename of the current job.
+	 *
+	 * @param key      {@code null} if the cache is disabled
+	 * @param filename
+	 * @return
+	 */
+	public RenderedPdf get(ResultKey key, String filename) {
+		if (key == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		Result result = cache.get(key, cached -> now - cached.createdAt < ttl);
+		return result == null ? null : new RenderedPdf(filename, result.data);
+	}
+
+	/**
+	 * Store generated pdf.
+	 *
+	 * @param key {@code null} if the cache is disabled
+	 * @param pdf
+	 */
+	public void put(ResultKey key, RenderedPdf pdf) {
+		if (key == null || !pdf.isInMemory() || key.templateVersion != templateVersion.get()) {
+			return;
+		}
+		cache.put(key, new Result(pdf.getData(), System.currentTimeMillis()));
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		templateVersion.incrementAndGet();
+		cache.removeIf(key -> event.affects(key.templateName));
+		log.debug("Render results of template invalidated - {}", event.getTemplateName());
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		cache.bindTo(registry, "pdf.cache.results");
+	}
+
+	/**
+	 * Content hash of a job.
+	 */
+	public static final class ResultKey {
+
+		private final String templateName;
+		private final String hash;
+		private final long templateVersion;
+
+		ResultKey(String templateName, String hash, long templateVersion) {
+			this.templateName = templateName;
+			this.hash = hash;
+			this.templateVersion = templateVersion;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ResultKey)) {
+				return false;
+			}
+			// template and version are part of the hash
+			return hash.equals(((ResultKey) obj).hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return templateName + ":" + hash;
+		}
+	}
+
+	private static final class Result {
+
+		private final byte[] data;
+		private final long createdAt;
+
+		Result(byte[] data, long createdAt) {
+			this.data = data;
+			this.createdAt = createdAt;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.pdf.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.io.codec.Base64;
+import com.pdf.service.TemplateChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache of Base64 encoded files of the template static folder.
+ *
+ * Entries are keyed by template, file name, size and modification time, so a
+ * replaced file is read again on the next render. The cache is bounded by the
+ * summed length of the encoded content and evicts least recently used files.
+ * The encoded Strings are shared between all rendering contexts.
+ */
+@Log4j2
+@Component
+public class StaticContentCache implements MeterBinder {
+
+	@Value("${template-folder}")
+	private String templateFolder;
+
+	@Value("${static-content-cache.max-bytes:67108864}")
+	private long maxBytes;
+
+	private LruCache<ContentKey, String> cache;
+
+	@PostConstruct
+	public void init() {
+		cache = new LruCache<>(maxBytes, String::length);
+	}
+
+	/**
+	 * Get Base64 encoded static content of template by variable name (file name
+	 * without extension).
+	 *
+	 * @param templateName
+	 * @return
+	 * @throws IOException
+	 */
+	public Map<String, String> getContent(String templateName) throws IOException {
+
+		Map<String, String> content = new LinkedHashMap<>();
+
+		File[] files = new File(templateFolder + templateName + "/static").listFiles();
+		if (files == null) {
+			return content;
+		}
+
+		for (File file : files) {
+			if (!file.isFile()) {
+				continue;
+			}
+
+			ContentKey key = new ContentKey(templateName, file.getName(), file.lastModified(), file.length());
+			String contentBase64 = cache.get(key);
+			if (contentBase64 == null) {
+				log.info("Load additional content - {}", file.getPath());
+				contentBase64 = Base64.encodeBytes(Files.readAllBytes(file.toPath()));
+				cache.put(key, contentBase64);
+			}
+			content.put(FilenameUtils.removeExtension(file.getName()), contentBase64);
+		}
+		return content;
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		cache.removeIf(key -> event.affects(key.templateName));
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		cache.bindTo(registry, "pdf.cache.static");
+	}
+
+	private static final class ContentKey {
+
+		private final String templateName;
+		private final String fileName;
+		private final long lastModified;
+		private final long length;
+
+		ContentKey(String templateName, String fileName, long lastModified, long length) {
+			this.templateName = templateName;
+			this.fileName = fileName;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ContentKey)) {
+				return false;
+			}
+			ContentKey other = (ContentKey) obj;
+			return lastModified == other.lastModified && length == other.length
+					&& templateName.equals(other.templateName) && fileName.equals(other.fileName);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(templateName, fileName, lastModified, length);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.pdf.cache;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.context.event.EventListener;
+import org.thymeleaf.cache.ExpressionCacheKey;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.ICacheEntryValidityChecker;
+import org.thymeleaf.cache.ICacheManager;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.engine.TemplateModel;
+
+import com.pdf.service.TemplateChangedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Thymeleaf cache manager keeping parsed templates in a bounded LRU cache.
+ *
+ * Entries of a template are dropped as soon as its folder changes on disk, so
+ * edited templates go live without a restart. Expression and specific caches
+ * are left to the {@link StandardCacheManager}.
+ */
+@Log4j2
+public class TemplateCacheManager implements ICacheManager, MeterBinder {
+
+	private final StandardCacheManager delegate = new StandardCacheManager();
+	private final TemplateCache templateCache;
+
+	public TemplateCacheManager(int maxSize) {
+		this.templateCache = new TemplateCache(maxSize);
+	}
+
+	@Override
+	public ICache<TemplateCacheKey, TemplateModel> getTemplateCache() {
+		return templateCache;
+	}
+
+	@Override
+	public ICache<ExpressionCacheKey, Object> getExpressionCache() {
+		return delegate.getExpressionCache();
+	}
+
+	@Override
+	public <K, V> ICache<K, V> getSpecificCache(String name) {
+		return delegate.getSpecificCache(name);
+	}
+
+	@Override
+	public List<String> getAllSpecificCacheNames() {
+		return delegate.getAllSpecificCacheNames();
+	}
+
+	@Override
+	public void clearAllCaches() {
+		templateCache.clear();
+		delegate.clearAllCaches();
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		if (event.getTemplateName() == null) {
+			log.info("Clear template cache");
+			templateCache.clear();
+		} else {
+			log.info("Clear template cache - {}", event.getTemplateName());
+			String prefix = event.getTemplateName() + "/";
+			templateCache.entries.removeIf(key -> key.getTemplate().startsWith(prefix));
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		templateCache.entries.bindTo(registry, "pdf.cache.templates");
+	}
+
+	private static class TemplateCache implements ICache<TemplateCacheKey, TemplateModel> {
+
+		private final LruCache<TemplateCacheKey, TemplateModel> entries;
+
+		TemplateCache(int maxSize) {
+			this.entries = new LruCache<>(maxSize);
+		}
+
+		@Override
+		public void put(TemplateCacheKey key, TemplateModel value) {
+			entries.put(key, value);
+		}
+
+		@Override
+		public TemplateModel get(TemplateCacheKey key) {
+			return entries.get(key);
+		}
+
+		@Override
+		public TemplateModel get(TemplateCacheKey key,
+				ICacheEntryValidityChecker<? super TemplateCacheKey, ? super TemplateModel> validityChecker) {
+			TemplateModel value = entries.get(key);
+			if (value != null && validityChecker != null && !validityChecker.checkIsValueStillValid(key, value)) {
+				entries.remove(key);
+				return null;
+			}
+			return value;
+		}
+
+		@Override
+		public void clear() {
+			entries.clear();
+		}
+
+		@Override
+		public void clearKey(TemplateCacheKey key) {
+			entries.remove(key);
+		}
+
+		@Override
+		public Set<TemplateCacheKey> keySet() {
+			return entries.keySet();
+		}
+	}
+}
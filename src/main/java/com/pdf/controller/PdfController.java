@@ -0,0 +1,206 @@
+package com.pdf.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.cache.RemoteResourceCache;
+import com.pdf.exception.ImageHostNotAllowedException;
+import com.pdf.exception.MissingMandatoryFieldException;
+import com.pdf.exception.UnknownBarcodeException;
+import com.pdf.exception.UnknownTemplateException;
+import com.pdf.model.PdfJob;
+import com.pdf.service.InFlightTracker;
+import com.pdf.service.PdfGenerator;
+import com.pdf.service.RenderCapacity;
+import com.pdf.service.RenderMetrics;
+import com.pdf.service.RenderMetrics.Stage;
+import com.pdf.service.TemplateNames;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Synchronous rendering for interactive use: accepts the job json of the queue
+ * message - returnUrl is optional - and streams the pdf in the response.
+ *
+ * Renders share caches and {@link RenderCapacity} with the JMS listeners, a
+ * request is answered with 429 if no render slot is free and with 503 while the
+ * application drains for shutdown. The render slot is released when the
+ * response is complete, also if the async request times out before rendering.
+ *
+ * Requests come from outside, so the template must exist (see
+ * {@link TemplateNames}) and remote images are only fetched from the hosts
+ * listed in {@code http.image-hosts}, other requests are answered with 400.
+ */
+@Log4j2
+@RestController
+@RequestMapping("/pdf")
+public class PdfController {
+
+	private static final String RELEASE_INTERCEPTOR = PdfController.class.getName() + ".release";
+
+	@Autowired
+	private PdfGenerator pdfGenerator;
+	@Autowired
+	private RenderCapacity renderCapacity;
+	@Autowired
+	private InFlightTracker inFlightTracker;
+	@Autowired
+	private RenderMetrics metrics;
+	@Autowired
+	private TemplateNames templateNames;
+	@Autowired
+	private RemoteResourceCache remoteResourceCache;
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Value("${http.image-hosts:}")
+	private String[] imageHosts;
+
+	/**
+	 * Render pdf, written to the response while it is generated.
+	 *
+	 * @param message
+	 * @param request
+	 * @return
+	 * @throws IOException
+	 * @throws MissingMandatoryFieldException
+	 * @throws UnknownBarcodeException
+	 * @throws UnknownTemplateException
+	 * @throws ImageHostNotAllowedException
+	 * @throws InterruptedException
+	 */
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_PDF_VALUE)
+	public ResponseEntity<StreamingResponseBody> render(@RequestBody String message, HttpServletRequest request)
+			throws IOException, MissingMandatoryFieldException, UnknownBarcodeException, UnknownTemplateException,
+			ImageHostNotAllowedException, InterruptedException {
+
+		log.info("received request='{}'", message);
+
+		Timer.Sample parse = metrics.start();
+		PdfJob job = PdfJob.parseSynchronous(mapper, message);
+		templateNames.check(job.getTemplateName());
+		checkImageHosts(job);
+		metrics.stop(parse, Stage.PARSE, job);
+
+		// counted before the check, a shutdown starting now waits for this job
+		metrics.jobStarted();
+		if (inFlightTracker.isDraining()) {
+			metrics.jobFinished();
+			log.warn("Shutting down, request rejected - {}", job);
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+		}
+
+		String lane;
+		try {
+			lane = renderCapacity.tryAcquire();
+		} catch (InterruptedException e) {
+			metrics.jobFinished();
+			throw e;
+		}
+		if (lane == null) {
+			metrics.jobFinished();
+			log.warn("Render capacity exhausted, request rejected - {}", job);
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+		}
+
+		AtomicBoolean released = new AtomicBoolean();
+		Runnable release = () -> {
+			if (released.compareAndSet(false, true)) {
+				renderCapacity.release(lane);
+				metrics.jobFinished();
+			}
+		};
+		// the body may never run: async timeout or rejected by the task executor
+		WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(RELEASE_INTERCEPTOR,
+				new CallableProcessingInterceptor() {
+					@Override
+					public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+						release.run();
+					}
+				});
+
+		StreamingResponseBody body = os -> {
+			try {
+				// closing the pdf must not close the response stream
+				pdfGenerator.generatePdf(job, StreamUtils.nonClosing(os));
+			} catch (UnknownBarcodeException | RuntimeException e) {
+				metrics.error(Stage.RENDER, job, e);
+				throw new IOException("Pdf could not be generated - " + job, e);
+			} catch (IOException e) {
+				metrics.error(Stage.RENDER, job, e);
+				throw e;
+			} finally {
+				release.run();
+			}
+		};
+
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_PDF)
+				.header(HttpHeaders.CONTENT_DISPOSITION,
+						ContentDisposition.builder("inline").filename(job.getFilename()).build().toString())
+				.body(body);
+	}
+
+	@ExceptionHandler({ MissingMandatoryFieldException.class, UnknownBarcodeException.class,
+			UnknownTemplateException.class, ImageHostNotAllowedException.class, JsonProcessingException.class })
+	public ResponseEntity<String> badRequest(Exception e) {
+		log.warn("Invalid request - {}", e.getMessage());
+		return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+	}
+
+	/**
+	 * Image variables must be http(s) urls of an allowed host, so requests can
+	 * not make the service fetch internal urls or local files.
+	 *
+	 * @param job
+	 * @throws ImageHostNotAllowedException
+	 */
+	private void checkImageHosts(PdfJob job) throws ImageHostNotAllowedException {
+		for (String variable : remoteResourceCache.getVariables()) {
+			Object value = job.getVariables().get(variable);
+			if (value == null || value.toString().isBlank()) {
+				continue;
+			}
+			String url = value.toString().trim();
+			String host = null;
+			try {
+				URI uri = new URI(url);
+				if ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme())) {
+					host = uri.getHost();
+				}
+			} catch (URISyntaxException e) {
+				// not allowed
+			}
+			if (host == null || Arrays.stream(imageHosts).map(String::trim).noneMatch(host::equalsIgnoreCase)) {
+				throw new ImageHostNotAllowedException(variable, url);
+			}
+		}
+	}
+}
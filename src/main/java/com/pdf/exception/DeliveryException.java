@@ -0,0 +1,33 @@
+package com.pdf.exception;
+
+import org.apache.http.HttpStatus;
+
+public class DeliveryException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	public DeliveryException(String url, int statusCode, String reason) {
+		super(String.format("Delivery failed - %s - %d %s", url, statusCode, reason));
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Server errors, timeouts and throttling are worth a retry, other client
+	 * errors are not.
+	 * 
+	 * @return
+	 */
+	public boolean isRetryable() {
+		return statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR || statusCode == HttpStatus.SC_REQUEST_TIMEOUT
+				|| statusCode == 429;
+	}
+}
@@ -0,0 +1,14 @@
+package com.pdf.exception;
+
+public class ImageHostNotAllowedException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public ImageHostNotAllowedException(String variable, String url) {
+		super(String.format("Image host is not allowed - %s: %s", variable, url));
+	}
+
+}
@@ -12,6 +12,10 @@ public class MissingMandatoryFieldException extends Exception {
 		super();
 	}
 
+	public MissingMandatoryFieldException(String message) {
+		super(String.format("Mandatory fields are missing - %s", message));
+	}
+
 	public MissingMandatoryFieldException(String message, String json) {
 		super(String.format("Mandatory fields are missing - %s \n %s", message, json));
 	}
@@ -0,0 +1,14 @@
+package com.pdf.exception;
+
+public class UnknownTemplateException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public UnknownTemplateException(String templateName) {
+		super(String.format("Template is unknown - %s", templateName));
+	}
+
+}
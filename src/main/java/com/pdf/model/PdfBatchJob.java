@@ -0,0 +1,193 @@
+package com.pdf.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pdf.exception.MissingMandatoryFieldException;
+import com.pdf.exception.UnknownBarcodeException;
+
+/**
+ * Several positions of one order rendered with the same template in one pass.
+ *
+ * A batch message is a regular message with an additional {@code positions}
+ * array. Every position is merged with the shared fields of the message and
+ * validated as {@link PdfJob}:
+ *
+ * <pre>
+ * {
+ *   "templateName": "thymeleaf", "language": "en", "filename": "order-4711.pdf",
+ *   "returnUrl": "...", "orderId": "4711", "output": "merged", "delivery": "batch",
+ *   "positions": [
+ *     { "positionId": "1", "voucherId": "V1", "barcode": "...", "barcodeType": "C128", ... },
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ *
+ * Positions without filename are named {@code <filename>-<positionId>.pdf}.
+ * A merged pdf of an html template is rendered in one pass, the template
+ * renders the {@code positions} list of its context.
+ */
+public final class PdfBatchJob {
+
+	/**
+	 * MERGED renders all positions into one pdf, SPLIT into one pdf per position.
+	 */
+	public enum Output {
+		MERGED,
+		SPLIT
+	}
+
+	/**
+	 * BATCH uploads all pdfs of the batch with one request, POSITION uploads every
+	 * pdf on its own. A merged pdf is always uploaded once.
+	 */
+	public enum Delivery {
+		BATCH,
+		POSITION
+	}
+
+	private static final String POSITIONS = "positions";
+	private static final String OUTPUT = "output";
+	private static final String DELIVERY = "delivery";
+
+	private final String filename;
+	private final Output output;
+	private final Delivery delivery;
+	private final List<PdfJob> jobs;
+
+	private PdfBatchJob(String filename, Output output, Delivery delivery, List<PdfJob> jobs) {
+		this.filename = filename;
+		this.output = output;
+		this.delivery = delivery;
+		this.jobs = Collections.unmodifiableList(jobs);
+	}
+
+	/**
+	 * Is message a batch message.
+	 *
+	 * @param message
+	 * @return
+	 */
+	public static boolean isBatch(JsonNode message) {
+		return message.path(POSITIONS).isArray();
+	}
+
+	/**
+	 * Parse and validate batch message.
+	 *
+	 * @param mapper
+	 * @param message
+	 * @return
+	 * @throws IOException
+	 * @throws MissingMandatoryFieldException
+	 * @throws UnknownBarcodeException
+	 */
+	public static PdfBatchJob parse(ObjectMapper mapper, JsonNode message)
+			throws IOException, MissingMandatoryFieldException, UnknownBarcodeException {
+
+		JsonNode positions = message.path(POSITIONS);
+		if (!positions.isArray() || positions.size() == 0) {
+			throw new MissingMandatoryFieldException(POSITIONS);
+		}
+
+		ObjectNode shared = ((ObjectNode) message).deepCopy();
+		shared.remove(List.of(POSITIONS, OUTPUT, DELIVERY));
+		String filename = shared.path("filename").asText("");
+		if (filename.isBlank()) {
+			throw new MissingMandatoryFieldException("filename");
+		}
+
+		List<PdfJob> jobs = new ArrayList<>(positions.size());
+		for (JsonNode position : positions) {
+			if (!position.isObject()) {
+				throw new MissingMandatoryFieldException(POSITIONS);
+			}
+			ObjectNode merged = shared.deepCopy();
+			merged.setAll((ObjectNode) position);
+			if (!position.hasNonNull("filename")) {
+				merged.put("filename", FilenameUtils.removeExtension(filename) + "-"
+						+ merged.path("positionId").asText() + ".pdf");
+			}
+			jobs.add(PdfJob.parse(mapper, merged));
+		}
+
+		Output output = Output.valueOf(message.path(OUTPUT).asText("merged").toUpperCase(Locale.ROOT));
+		Delivery delivery = Delivery.valueOf(message.path(DELIVERY).asText("batch").toUpperCase(Locale.ROOT));
+		return new PdfBatchJob(filename, output, delivery, jobs);
+	}
+
+	/**
+	 * Copy of a batch message with only some of its positions, e.g. the positions
+	 * whose delivery failed.
+	 *
+	 * @param mapper
+	 * @param message   batch message
+	 * @param positions indexes of the positions to keep
+	 * @return
+	 * @throws IOException
+	 */
+	public static String retainPositions(ObjectMapper mapper, JsonNode message, Collection<Integer> positions)
+			throws IOException {
+		JsonNode all = message.path(POSITIONS);
+		ObjectNode copy = ((ObjectNode) message).deepCopy();
+		ArrayNode retained = copy.putArray(POSITIONS);
+		for (int i = 0; i < all.size(); i++) {
+			if (positions.contains(i)) {
+				retained.add(all.get(i));
+			}
+		}
+		return mapper.writeValueAsString(copy);
+	}
+
+	/**
+	 * Filename of the merged pdf.
+	 *
+	 * @return
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	public Output getOutput() {
+		return output;
+	}
+
+	public Delivery getDelivery() {
+		return delivery;
+	}
+
+	/**
+	 * Jobs of all positions, in message order.
+	 *
+	 * @return
+	 */
+	public List<PdfJob> getJobs() {
+		return jobs;
+	}
+
+	/**
+	 * Shared fields of the batch are taken from the first position.
+	 *
+	 * @return
+	 */
+	public PdfJob getFirstJob() {
+		return jobs.get(0);
+	}
+
+	@Override
+	public String toString() {
+		return "PdfBatchJob [filename=" + filename + ", output=" + output + ", delivery=" + delivery + ", positions="
+				+ jobs.size() + "]";
+	}
+}
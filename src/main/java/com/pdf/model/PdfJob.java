@@ -0,0 +1,251 @@
+package com.pdf.model;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.exception.MissingMandatoryFieldException;
+import com.pdf.exception.UnknownBarcodeException;
+import com.pdf.service.PdfGenerator.BarcodeType;
+
+/**
+ * Pdf generation job, parsed and validated once per message.
+ *
+ * Known fields are typed, every field - known or not - is passed to the
+ * template as variable. Variables set by the generator itself are dropped from
+ * the message, they would reach the template unescaped.
+ */
+public final class PdfJob {
+
+	/** template variables set by the generator, not taken from messages */
+	private static final Set<String> RESERVED_VARIABLES = Set.of("barcodeSvg", "barcodeBase64");
+
+	private final String templateName;
+	private final String language;
+	private final String filename;
+	private final String returnUrl;
+	private final String orderId;
+	private final String positionId;
+	private final String voucherId;
+	private final String barcode;
+	private final BarcodeType barcodeType;
+	private final String barcodeRendering;
+
+	private final Map<String, Object> variables = new LinkedHashMap<>();
+
+	@JsonCreator
+	private PdfJob(@JsonProperty("templateName") String templateName, @JsonProperty("language") String language,
+			@JsonProperty("filename") String filename, @JsonProperty("returnUrl") String returnUrl,
+			@JsonProperty("orderId") String orderId, @JsonProperty("positionId") String positionId,
+			@JsonProperty("voucherId") String voucherId, @JsonProperty("barcode") String barcode,
+			@JsonProperty("barcodeType") String barcodeType,
+			@JsonProperty("barcodeRendering") String barcodeRendering)
+			throws MissingMandatoryFieldException, UnknownBarcodeException {
+
+		// validate Meta, returnUrl is validated by parse() as synchronous jobs have none
+		if (StringUtils.isBlank(templateName) || StringUtils.isBlank(language) || StringUtils.isBlank(filename)) {
+			throw new MissingMandatoryFieldException("templateName | language | filename");
+		}
+
+		// validate order infos
+		if (StringUtils.isBlank(orderId) || StringUtils.isBlank(positionId) || StringUtils.isBlank(voucherId)) {
+			throw new MissingMandatoryFieldException("orderId | positionId | voucherId");
+		}
+
+		this.templateName = templateName;
+		this.language = language;
+		this.filename = filename;
+		this.returnUrl = returnUrl;
+		this.orderId = orderId;
+		this.positionId = positionId;
+		this.voucherId = voucherId;
+		this.barcode = barcode;
+		this.barcodeRendering = barcodeRendering;
+
+		// validate Barcode, only needed if barcode is not blank
+		if (StringUtils.isNotBlank(barcode)) {
+			try {
+				this.barcodeType = BarcodeType.valueOf(barcodeType);
+			} catch (NullPointerException | IllegalArgumentException e) {
+				throw new UnknownBarcodeException(barcodeType);
+			}
+		} else {
+			this.barcodeType = null;
+		}
+
+		putVariable("templateName", templateName);
+		putVariable("language", language);
+		putVariable("filename", filename);
+		putVariable("returnUrl", returnUrl);
+		putVariable("orderId", orderId);
+		putVariable("positionId", positionId);
+		putVariable("voucherId", voucherId);
+		putVariable("barcode", barcode);
+		putVariable("barcodeType", barcodeType);
+		putVariable("barcodeRendering", barcodeRendering);
+	}
+
+	/**
+	 * Parse and validate Json message.
+	 * 
+	 * @param mapper
+	 * @param message
+	 * @return
+	 * @throws IOException
+	 * @throws MissingMandatoryFieldException
+	 * @throws UnknownBarcodeException
+	 */
+	public static PdfJob parse(ObjectMapper mapper, String message)
+			throws IOException, MissingMandatoryFieldException, UnknownBarcodeException {
+		return requireReturnUrl(parseSynchronous(mapper, message));
+	}
+
+	/**
+	 * Parse and validate Json message of a synchronous request, returnUrl is
+	 * optional.
+	 * 
+	 * @param mapper
+	 * @param message
+	 * @return
+	 * @throws IOException
+	 * @throws MissingMandatoryFieldException
+	 * @throws UnknownBarcodeException
+	 */
+	public static PdfJob parseSynchronous(ObjectMapper mapper, String message)
+			throws IOException, MissingMandatoryFieldException, UnknownBarcodeException {
+		try {
+			return mapper.readValue(message, PdfJob.class);
+		} catch (JsonMappingException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Parse and validate already parsed Json message.
+	 * 
+	 * @param mapper
+	 * @param message
+	 * @return
+	 * @throws IOException
+	 * @throws MissingMandatoryFieldException
+	 * @throws UnknownBarcodeException
+	 */
+	public static PdfJob parse(ObjectMapper mapper, JsonNode message)
+			throws IOException, MissingMandatoryFieldException, UnknownBarcodeException {
+		try {
+			return requireReturnUrl(mapper.treeToValue(message, PdfJob.class));
+		} catch (JsonMappingException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private static PdfJob requireReturnUrl(PdfJob job) throws MissingMandatoryFieldException {
+		if (job == null || StringUtils.isBlank(job.returnUrl)) {
+			throw new MissingMandatoryFieldException("returnUrl");
+		}
+		return job;
+	}
+
+	private static JsonMappingException unwrap(JsonMappingException e)
+			throws MissingMandatoryFieldException, UnknownBarcodeException {
+		// validation errors of the creator are wrapped by jackson
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof MissingMandatoryFieldException) {
+				throw (MissingMandatoryFieldException) cause;
+			}
+			if (cause instanceof UnknownBarcodeException) {
+				throw (UnknownBarcodeException) cause;
+			}
+		}
+		return e;
+	}
+
+	@JsonAnySetter
+	private void putField(String name, Object value) {
+		if (!RESERVED_VARIABLES.contains(name)) {
+			putVariable(name, value);
+		}
+	}
+
+	private void putVariable(String name, Object value) {
+		if (value != null) {
+			variables.put(name, value);
+		}
+	}
+
+	public String getTemplateName() {
+		return templateName;
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public Locale getLocale() {
+		return StringUtils.isBlank(language) ? Locale.ENGLISH : Locale.forLanguageTag(language);
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * @return callback url, {@code null} for synchronous jobs
+	 */
+	public String getReturnUrl() {
+		return returnUrl;
+	}
+
+	public String getOrderId() {
+		return orderId;
+	}
+
+	public String getPositionId() {
+		return positionId;
+	}
+
+	public String getVoucherId() {
+		return voucherId;
+	}
+
+	public String getBarcode() {
+		return barcode;
+	}
+
+	/**
+	 * @return BarcodeType, {@code null} if there is no barcode
+	 */
+	public BarcodeType getBarcodeType() {
+		return barcodeType;
+	}
+
+	public String getBarcodeRendering() {
+		return barcodeRendering;
+	}
+
+	/**
+	 * All fields of the message as template variables.
+	 * 
+	 * @return
+	 */
+	public Map<String, Object> getVariables() {
+		return Collections.unmodifiableMap(variables);
+	}
+
+	@Override
+	public String toString() {
+		return "PdfJob [templateName=" + templateName + ", filename=" + filename + ", orderId=" + orderId
+				+ ", positionId=" + positionId + ", voucherId=" + voucherId + "]";
+	}
+}
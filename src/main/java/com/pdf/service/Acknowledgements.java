@@ -0,0 +1,110 @@
+package com.pdf.service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Acknowledgements deferred to the end of the upload stage.
+ *
+ * JMS sessions are single-threaded, so a message must be acknowledged on the
+ * listener thread of the consumer that received it. Upload threads only queue
+ * the acknowledgement for that thread; {@link AcknowledgingListenerContainer}
+ * sends the queued acknowledgements before every receive, at the latest after
+ * the receive timeout.
+ */
+@Log4j2
+@Component
+public class Acknowledgements {
+
+	/** queued acknowledgements by listener thread */
+	private final Map<Thread, Queue<Message>> deferred = new ConcurrentHashMap<>();
+
+	/** messages handed over to the upload stage, not yet acknowledged */
+	private int pending;
+
+	/**
+	 * A message received on the current listener thread is handed over, its
+	 * acknowledgement is deferred.
+	 */
+	public synchronized void handedOver() {
+		pending++;
+	}
+
+	/**
+	 * Queue the acknowledgement of a handed-over message for its listener thread.
+	 *
+	 * @param listener thread that received the message
+	 * @param message
+	 */
+	public void acknowledgeLater(Thread listener, Message message) {
+		deferred.computeIfAbsent(listener, thread -> new ConcurrentLinkedQueue<>()).add(message);
+	}
+
+	/**
+	 * A handed-over message is left unacknowledged for redelivery.
+	 */
+	public synchronized void released() {
+		pending--;
+		notifyAll();
+	}
+
+	/**
+	 * Send the acknowledgements queued for the current listener thread, on its own
+	 * session.
+	 */
+	public void acknowledgeQueued() {
+		Queue<Message> messages = deferred.get(Thread.currentThread());
+		if (messages == null) {
+			return;
+		}
+		Message message;
+		while ((message = messages.poll()) != null) {
+			try {
+				message.acknowledge();
+			} catch (JMSException e) {
+				log.error("Message could not be acknowledged", e);
+			}
+			released();
+		}
+	}
+
+	/**
+	 * Number of handed-over messages not yet acknowledged or released. Their
+	 * consumer sessions must stay open.
+	 *
+	 * @return
+	 */
+	public synchronized int getPending() {
+		return pending;
+	}
+
+	/**
+	 * Wait until all handed-over messages are acknowledged or released.
+	 *
+	 * @param timeoutMillis
+	 * @return {@code false} if acknowledgements are still pending after the
+	 *         timeout
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitAcknowledged(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (pending > 0) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+}
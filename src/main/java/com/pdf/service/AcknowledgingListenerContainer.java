@@ -0,0 +1,48 @@
+package com.pdf.service;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+/**
+ * Listener container sending the deferred acknowledgements of
+ * {@link Acknowledgements} on the listener thread, before every receive.
+ *
+ * While the application drains for shutdown no new message is received, but
+ * the consumers keep running so the acknowledgements of uploads in flight are
+ * still sent on their sessions.
+ */
+public class AcknowledgingListenerContainer extends DefaultMessageListenerContainer {
+
+	private final Acknowledgements acknowledgements;
+	private final InFlightTracker inFlightTracker;
+
+	private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
+
+	public AcknowledgingListenerContainer(Acknowledgements acknowledgements, InFlightTracker inFlightTracker) {
+		this.acknowledgements = acknowledgements;
+		this.inFlightTracker = inFlightTracker;
+	}
+
+	@Override
+	public void setReceiveTimeout(long receiveTimeout) {
+		super.setReceiveTimeout(receiveTimeout);
+		this.receiveTimeout = receiveTimeout;
+	}
+
+	@Override
+	protected Message receiveMessage(MessageConsumer consumer) throws JMSException {
+		acknowledgements.acknowledgeQueued();
+		if (inFlightTracker.isDraining()) {
+			try {
+				Thread.sleep(receiveTimeout > 0 ? receiveTimeout : DEFAULT_RECEIVE_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return null;
+		}
+		return super.receiveMessage(consumer);
+	}
+}
@@ -0,0 +1,172 @@
+package com.pdf.service;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.PixelGrabber;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Module grid of a barcode: one entry per bar/module, dark or light.
+ *
+ * The grid is read once from the unscaled barcode image and then scaled by
+ * whole pixels, so no AWT drawing or interpolation is involved.
+ */
+public final class BarcodeMatrix {
+
+	private final int width;
+	private final int height;
+	private final boolean[] dark;
+
+	private BarcodeMatrix(int width, int height, boolean[] dark) {
+		this.width = width;
+		this.height = height;
+		this.dark = dark;
+	}
+
+	/**
+	 * Read module grid from unscaled barcode image.
+	 * 
+	 * @param image
+	 * @return
+	 * @throws IOException
+	 */
+	public static BarcodeMatrix of(Image image) throws IOException {
+
+		PixelGrabber grabber = new PixelGrabber(image, 0, 0, -1, -1, true);
+		try {
+			if (!grabber.grabPixels()) {
+				throw new IOException("Barcode image could not be read");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading barcode image");
+		}
+
+		int width = grabber.getWidth();
+		int height = grabber.getHeight();
+		int[] pixels = (int[]) grabber.getPixels();
+
+		boolean[] dark = new boolean[width * height];
+		for (int i = 0; i < dark.length; i++) {
+			dark[i] = (pixels[i] & 0xFF) < 0x80;
+		}
+		return new BarcodeMatrix(width, height, dark);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean isDark(int x, int y) {
+		return dark[y * width + x];
+	}
+
+	/**
+	 * Encode grid as 1-bit png, every module scaled to scaleFactor x scaleFactor
+	 * pixels.
+	 * 
+	 * @param scaleFactor
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] toPng(int scaleFactor) throws IOException {
+
+		int scaledWidth = width * scaleFactor;
+		BufferedImage image = new BufferedImage(scaledWidth, height * scaleFactor, BufferedImage.TYPE_BYTE_BINARY);
+		WritableRaster raster = image.getRaster();
+
+		// index 0 of the default binary palette is black, 1 is white
+		int[] row = new int[scaledWidth];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Arrays.fill(row, x * scaleFactor, (x + 1) * scaleFactor, isDark(x, y) ? 0 : 1);
+			}
+			for (int dy = 0; dy < scaleFactor; dy++) {
+				raster.setPixels(0, y * scaleFactor + dy, scaledWidth, 1, row);
+			}
+		}
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream(scaledWidth * height);
+		ImageIO.write(image, "png", os);
+		return os.toByteArray();
+	}
+
+	/**
+	 * Encode grid as inline svg with the given height, width keeps the aspect
+	 * ratio of the grid.
+	 * 
+	 * Dark areas become rects, see {@link #forEachRect(RectConsumer)}.
+	 * 
+	 * @param heightMm
+	 * @return
+	 */
+	public String toSvg(double heightMm) {
+
+		double widthMm = heightMm * width / height;
+
+		StringBuilder svg = new StringBuilder(64 + width * 48);
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(format(widthMm))
+				.append("mm\" height=\"").append(format(heightMm)).append("mm\" viewBox=\"0 0 ").append(width)
+				.append(' ').append(height).append("\" preserveAspectRatio=\"none\">");
+		svg.append("<rect x=\"0\" y=\"0\" width=\"").append(width).append("\" height=\"").append(height)
+				.append("\" fill=\"#ffffff\"/>");
+
+		forEachRect((x, y, w, h) -> svg.append("<rect x=\"").append(x).append("\" y=\"").append(y)
+				.append("\" width=\"").append(w).append("\" height=\"").append(h).append("\"/>"));
+
+		return svg.append("</svg>").toString();
+	}
+
+	/**
+	 * Visit the dark areas of the grid as rectangles in module units. Dark runs of
+	 * a row become one rectangle, identical consecutive rows are merged, so 1D
+	 * barcodes end up with one rectangle per bar.
+	 * 
+	 * @param consumer
+	 */
+	public void forEachRect(RectConsumer consumer) {
+		int y = 0;
+		while (y < height) {
+			// merge identical consecutive rows
+			int rows = 1;
+			while (y + rows < height
+					&& Arrays.equals(dark, y * width, (y + 1) * width, dark, (y + rows) * width, (y + rows + 1) * width)) {
+				rows++;
+			}
+
+			int x = 0;
+			while (x < width) {
+				if (!isDark(x, y)) {
+					x++;
+					continue;
+				}
+				int start = x;
+				while (x < width && isDark(x, y)) {
+					x++;
+				}
+				consumer.accept(start, y, x - start, rows);
+			}
+			y += rows;
+		}
+	}
+
+	@FunctionalInterface
+	public interface RectConsumer {
+		void accept(int x, int y, int width, int height);
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+}
@@ -0,0 +1,120 @@
+package com.pdf.service;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Schedules retries of failed uploads with exponential backoff and jitter.
+ *
+ * The rendered pdf is kept until the retry ran, so a transient failure of the
+ * receiver costs an upload, not a render. At most
+ * {@code delivery.retry.capacity} retries are pending, beyond that failed
+ * deliveries are given up right away.
+ */
+@Log4j2
+@Component
+public class DeliveryRetryScheduler implements MeterBinder {
+
+	@Value("${delivery.retry.max-attempts:5}")
+	private int maxAttempts;
+	@Value("${delivery.retry.initial-delay-ms:1000}")
+	private long initialDelay;
+	@Value("${delivery.retry.multiplier:2.0}")
+	private double multiplier;
+	@Value("${delivery.retry.max-delay-ms:60000}")
+	private long maxDelay;
+	@Value("${delivery.retry.jitter:0.2}")
+	private double jitter;
+	@Value("${delivery.retry.capacity:256}")
+	private int capacity;
+	@Value("${delivery.retry.threads:2}")
+	private int threads;
+
+	private ScheduledThreadPoolExecutor executor;
+	private final AtomicInteger pending = new AtomicInteger();
+
+	@PostConstruct
+	public void init() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+			Thread thread = new Thread(runnable, "pdf-delivery-retry-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Schedule next attempt of a failed delivery.
+	 *
+	 * @param attempt number of the failed attempt, starting with 1
+	 * @param retry
+	 * @return {@code false} if attempts are exhausted or too many retries are
+	 *         pending, the caller gives up then
+	 */
+	public boolean schedule(int attempt, Runnable retry) {
+		if (attempt >= maxAttempts || executor.isShutdown()) {
+			return false;
+		}
+		if (pending.incrementAndGet() > capacity) {
+			pending.decrementAndGet();
+			log.warn("Too many pending delivery retries - {}", capacity);
+			return false;
+		}
+
+		long delay = delay(attempt);
+		log.info("Retry delivery in {} ms, attempt {} of {}", delay, attempt + 1, maxAttempts);
+		executor.schedule(() -> {
+			pending.decrementAndGet();
+			retry.run();
+		}, delay, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	public int getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * Backoff before the next attempt, randomized by +/- jitter so receivers
+	 * recovering from an outage are not hit by all retries at once.
+	 *
+	 * @param attempt
+	 * @return
+	 */
+	protected long delay(int attempt) {
+		double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+		double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+		return Math.max(0, Math.round(delay * factor));
+	}
+
+	/**
+	 * Pending retries are dropped, their messages are not acknowledged and
+	 * delivered again after restart.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		int dropped = executor.shutdownNow().size();
+		if (dropped > 0) {
+			log.warn("Delivery retries dropped on shutdown - {}", dropped);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("pdf.delivery.retry.pending", this, DeliveryRetryScheduler::getPending).register(registry);
+	}
+}
@@ -0,0 +1,37 @@
+package com.pdf.service;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint {@code /actuator/drain}: GET reports the jobs in flight,
+ * POST starts the graceful shutdown of {@link ShutdownManager}.
+ *
+ * Exposed over http only if included in
+ * {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "drain")
+public class DrainEndpoint {
+
+	@Autowired
+	private ShutdownManager shutdownManager;
+	@Autowired
+	private InFlightTracker inFlightTracker;
+
+	@ReadOperation
+	public Map<String, Object> status() {
+		return Map.of("shuttingDown", shutdownManager.isShuttingDown(), "inFlight", inFlightTracker.getInFlight());
+	}
+
+	@WriteOperation
+	public Map<String, Object> drain() {
+		boolean started = shutdownManager.shutdown("actuator");
+		return Map.of("started", started, "inFlight", inFlightTracker.getInFlight());
+	}
+}
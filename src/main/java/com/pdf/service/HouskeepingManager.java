@@ -1,39 +1,247 @@
 package com.pdf.service;
 
-import java.io.File;
-import java.util.Date;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * Removes generated barcodes and pdfs.
+ *
+ * Files are written to time buckets of {@link OutputDirectories}; a bucket is
+ * deleted as a whole once it is older than {@code housekeeping.duration-hours}.
+ * If the directories exceed {@code housekeeping.max-bytes} or the file store is
+ * filled above {@code housekeeping.max-usage} (off by default), the oldest
+ * buckets are evicted first. The current bucket is never evicted.
+ *
+ * Spill files and files written before buckets were introduced are removed by
+ * age only.
+ */
 @Log4j2
 @Component
-public class HouskeepingManager {
+public class HouskeepingManager implements MeterBinder {
+
+	private static final String EXPIRED = "expired";
+	private static final String QUOTA = "quota";
 
 	@Value("${housekeeping.duration-hours}")
 	private Integer housekeepingDurationHours;
-	@Value("${directory.barcode}")
-	private String barcodeDir;
-	@Value("${directory.pdf}")
-	private String pdfDir;
+	@Value("${housekeeping.max-bytes:0}")
+	private long maxBytes;
+	@Value("${housekeeping.max-usage:0}")
+	private double maxUsage;
+
+	@Autowired
+	private OutputDirectories outputDirectories;
 
-	@Scheduled(fixedRate = 2 * 60 * 60 * 1000)
+	private MeterRegistry registry;
+
+	@Scheduled(fixedDelayString = "${housekeeping.interval-ms:300000}")
 	public void removeGeneratedPdf() {
-		deleteFilesInDirectory(barcodeDir);
-		deleteFilesInDirectory(pdfDir);
-	}
-	
-	private void deleteFilesInDirectory(String directory) {
-		for (File file : new File(directory).listFiles()) {
-			Date date = DateUtils.addHours(new Date(), -housekeepingDurationHours);
-			if (file.isFile() && date.after(new Date(file.lastModified()))) {
-				log.info("Delete file - " + file.getAbsolutePath());
-				file.delete();
+
+		long now = System.currentTimeMillis();
+		long expiry = now - TimeUnit.HOURS.toMillis(housekeepingDurationHours);
+		String current = outputDirectories.bucketName(now);
+
+		// spill files may belong to uploads still in progress
+		Path spill = outputDirectories.getSpillDirectory();
+		if (Files.isDirectory(spill)) {
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(spill)) {
+				for (Path entry : entries) {
+					deleteExpiredFile(spill.getParent(), entry, expiry);
+				}
+			} catch (IOException e) {
+				log.warn("Directory could not be cleaned up - {} - {}", spill, e.getMessage());
 			}
 		}
+
+		List<Bucket> buckets = new ArrayList<>();
+		for (Path directory : outputDirectories.getDirectories()) {
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					String name = entry.getFileName().toString();
+					long start = outputDirectories.bucketStart(name);
+					if (start < 0) {
+						deleteExpiredFile(directory, entry, expiry);
+					} else if (start + outputDirectories.getBucketMillis() <= expiry) {
+						delete(directory, entry, EXPIRED);
+					} else if (!name.equals(current)) {
+						buckets.add(new Bucket(directory, entry, name));
+					}
+				}
+			} catch (IOException e) {
+				log.warn("Directory could not be cleaned up - {} - {}", directory, e.getMessage());
+			}
+		}
+
+		enforceQuota(buckets);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Evict oldest buckets while the quota is exceeded.
+	 *
+	 * @param buckets
+	 */
+	private void enforceQuota(List<Bucket> buckets) {
+
+		long bytes = 0;
+		if (maxBytes > 0) {
+			for (Bucket bucket : buckets) {
+				bytes += size(bucket.path);
+			}
+			bytes += currentBytes();
+		}
+
+		buckets.sort(Comparator.comparing(bucket -> bucket.name));
+		for (Bucket bucket : buckets) {
+			boolean overBytes = maxBytes > 0 && bytes > maxBytes;
+			if (!overBytes && !isStoreFull(bucket.directory)) {
+				return;
+			}
+			log.warn("Housekeeping quota exceeded, evict bucket - {}", bucket.path);
+			bytes -= delete(bucket.directory, bucket.path, QUOTA);
+		}
+	}
+
+	private long currentBytes() {
+		String current = outputDirectories.bucketName(System.currentTimeMillis());
+		long bytes = 0;
+		for (Path directory : outputDirectories.getDirectories()) {
+			bytes += size(directory.resolve(current));
+		}
+		return bytes;
+	}
+
+	private boolean isStoreFull(Path directory) {
+		if (maxUsage <= 0) {
+			return false;
+		}
+		try {
+			FileStore store = Files.getFileStore(directory);
+			long total = store.getTotalSpace();
+			return total > 0 && (double) (total - store.getUsableSpace()) / total > maxUsage;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Delete file or bucket recursively.
+	 *
+	 * @param directory
+	 * @param path
+	 * @param reason
+	 * @return bytes reclaimed
+	 */
+	private long delete(Path directory, Path path, String reason) {
+
+		long[] reclaimed = new long[2];
+		try {
+			Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					Files.deleteIfExists(file);
+					reclaimed[0]++;
+					reclaimed[1] += attrs.size();
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					Files.deleteIfExists(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			log.warn("Could not be deleted completely - {} - {}", path, e.getMessage());
+		}
+
+		log.info("Deleted {} - {} files, {} bytes ({})", path, reclaimed[0], reclaimed[1], reason);
+		count(directory, reason, reclaimed[0], reclaimed[1]);
+		return reclaimed[1];
+	}
+
+	private void deleteExpiredFile(Path directory, Path file, long expiry) {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() < expiry) {
+				log.info("Delete file - {}", file);
+				Files.deleteIfExists(file);
+				count(directory, EXPIRED, 1, attrs.size());
+			}
+		} catch (IOException e) {
+			log.warn("File could not be deleted - {} - {}", file, e.getMessage());
+		}
+	}
+
+	private static long size(Path path) {
+		if (!Files.isDirectory(path)) {
+			return 0;
+		}
+		long[] size = new long[1];
+		try {
+			Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					size[0] += attrs.size();
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			// size is a lower bound
+		}
+		return size[0];
+	}
+
+	private void count(Path directory, String reason, long files, long bytes) {
+		if (registry == null) {
+			return;
+		}
+		String dir = directory.getFileName() == null ? directory.toString() : directory.getFileName().toString();
+		Counter.builder("pdf.housekeeping.files.reclaimed").tag("directory", dir).tag("reason", reason)
+				.register(registry).increment(files);
+		Counter.builder("pdf.housekeeping.bytes.reclaimed").baseUnit("bytes").tag("directory", dir)
+				.tag("reason", reason).register(registry).increment(bytes);
+	}
+
+	private static final class Bucket {
+
+		private final Path directory;
+		private final Path path;
+		private final String name;
+
+		private Bucket(Path directory, Path path, String name) {
+			this.directory = directory;
+			this.path = path;
+			this.name = name;
+		}
 	}
 }
@@ -3,27 +3,115 @@ package com.pdf.service;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.pdf.exception.DeliveryException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
 @Service
-public class HttpRequestService {
+public class HttpRequestService implements MeterBinder {
+
+	private static final ContentType PDF_CONTENT_TYPE = ContentType.create("application/pdf");
+
+	@Value("${http.pool.max-total:200}")
+	private int maxTotal;
+	@Value("${http.pool.max-per-route:50}")
+	private int maxPerRoute;
+	@Value("${http.connect-timeout-ms:5000}")
+	private int connectTimeout;
+	@Value("${http.connection-request-timeout-ms:10000}")
+	private int connectionRequestTimeout;
+	@Value("${http.socket-timeout-ms:60000}")
+	private int socketTimeout;
+	@Value("${http.keep-alive-ms:30000}")
+	private long keepAlive;
+	@Value("${http.idle-eviction-ms:30000}")
+	private long idleEviction;
+
+	private PoolingHttpClientConnectionManager connectionManager;
+	private CloseableHttpClient client;
+
+	@PostConstruct
+	public void init() {
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.setSocketTimeout(socketTimeout)
+				.build();
+
+		client = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy((response, context) -> {
+					// honor Keep-Alive header of the receiver, otherwise keep connection for keepAlive
+					long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return duration > 0 ? duration : keepAlive;
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(idleEviction, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		client.close();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("pdf.http.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased()).register(registry);
+		Gauge.builder("pdf.http.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable()).register(registry);
+		Gauge.builder("pdf.http.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending()).register(registry);
+		Gauge.builder("pdf.http.pool.max", connectionManager, cm -> cm.getTotalStats().getMax()).register(registry);
+	}
+
+	/**
+	 * Multipart body streaming the pdf from memory or from its spill file.
+	 * 
+	 * @param pdf
+	 * @return
+	 */
+	private ContentBody toContentBody(RenderedPdf pdf) {
+		if (pdf.isInMemory()) {
+			return new ByteArrayBody(pdf.getData(), PDF_CONTENT_TYPE, pdf.getFilename());
+		}
+		return new FileBody(pdf.getFile(), PDF_CONTENT_TYPE, pdf.getFilename());
+	}
 
 	/**
 	 * Sends Http POST with given pdf file to url
@@ -32,14 +120,13 @@ public class HttpRequestService {
 	 * @throws ClientProtocolException
 	 * @throws URISyntaxException
 	 * @throws IOException
-	 * @throws InterruptedException
+	 * @throws DeliveryException       if the receiver does not answer with 2xx
 	 */
 	public void sendMultipartHttpPost(String url, Map<String, Object> multipartMap)
-			throws ClientProtocolException, IOException {
+			throws ClientProtocolException, IOException, DeliveryException {
 
 		log.info("Prepare Http POST Request ...");
 
-		CloseableHttpClient client = HttpClients.createDefault();
 		HttpPost post = new HttpPost(url);
 
 		MultipartEntityBuilder builder = MultipartEntityBuilder.create();
@@ -48,8 +135,15 @@ public class HttpRequestService {
 		log.info("Http POST Body - " + multipartMap.toString());
 		for (Entry<String, Object> entry : multipartMap.entrySet()) {
 			log.info("Http POST Body Multipart Entry - " + entry.getKey() + " - " + entry.getValue());
-			if (entry.getValue() instanceof File) {
-				FileBody fileBody = new FileBody((File) entry.getValue(), ContentType.create("application/pdf"));
+			if (entry.getValue() instanceof RenderedPdf) {
+				builder.addPart(entry.getKey(), toContentBody((RenderedPdf) entry.getValue()));
+			} else if (entry.getValue() instanceof List) {
+				// several pdfs under the same part name, e.g. split batches
+				for (Object value : (List<?>) entry.getValue()) {
+					builder.addPart(entry.getKey(), toContentBody((RenderedPdf) value));
+				}
+			} else if (entry.getValue() instanceof File) {
+				FileBody fileBody = new FileBody((File) entry.getValue(), PDF_CONTENT_TYPE);
 				builder.addPart(entry.getKey(), fileBody);
 			} else if (entry.getValue() instanceof String) {
 				StringBody stringBody = new StringBody((String) entry.getValue(), ContentType.MULTIPART_FORM_DATA);
@@ -63,8 +157,15 @@ public class HttpRequestService {
 
 		log.info("Send Http POST Request - " + url);
 
-		CloseableHttpResponse response = client.execute(post);
+		try (CloseableHttpResponse response = client.execute(post)) {
+			log.info(response.getStatusLine().toString());
+			// consume body so the connection goes back to the pool
+			EntityUtils.consume(response.getEntity());
 
-		log.info(response.getStatusLine().toString());
+			int status = response.getStatusLine().getStatusCode();
+			if (status < 200 || status >= 300) {
+				throw new DeliveryException(url, status, response.getStatusLine().getReasonPhrase());
+			}
+		}
 	}
 }
@@ -0,0 +1,63 @@
+package com.pdf.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Jobs received - from the queue or the http endpoint - but not yet finished,
+ * i.e. delivered, sent to the error queue or streamed to the client.
+ *
+ * Used by {@link ShutdownManager} to wait until in-flight work is drained.
+ */
+@Component
+public class InFlightTracker {
+
+	private int inFlight;
+	private volatile boolean draining;
+
+	public synchronized void started() {
+		inFlight++;
+	}
+
+	public synchronized void finished() {
+		inFlight--;
+		if (inFlight <= 0) {
+			notifyAll();
+		}
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Shutdown started, no new work should be accepted.
+	 */
+	public void startDraining() {
+		draining = true;
+	}
+
+	public boolean isDraining() {
+		return draining;
+	}
+
+	/**
+	 * Wait until no job is in flight.
+	 *
+	 * @param timeoutMillis
+	 * @return {@code false} if jobs are still in flight after the timeout
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (inFlight > 0) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+}
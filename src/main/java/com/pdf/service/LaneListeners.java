@@ -0,0 +1,48 @@
+package com.pdf.service;
+
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.annotation.JmsListenerConfigurer;
+import org.springframework.jms.config.JmsListenerEndpointRegistrar;
+import org.springframework.jms.config.SimpleJmsListenerEndpoint;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Registers one listener per priority lane of {@link Lanes}, with id
+ * {@code pdf-generator-listener.<lane>}. The listeners use the default
+ * container factory, so they are started and stopped together with the
+ * listener of the base queue.
+ */
+@Log4j2
+@Component
+public class LaneListeners implements JmsListenerConfigurer {
+
+	@Autowired
+	private Lanes lanes;
+	@Autowired
+	private Receiver receiver;
+
+	@Override
+	public void configureJmsListeners(JmsListenerEndpointRegistrar registrar) {
+		for (String lane : lanes.getNames()) {
+			SimpleJmsListenerEndpoint endpoint = new SimpleJmsListenerEndpoint();
+			endpoint.setId(Receiver.JMS_LISTENER_ID + "." + lane);
+			endpoint.setDestination(lanes.queue(lane));
+			endpoint.setConcurrency(lanes.getConcurrency(lane));
+			endpoint.setMessageListener(message -> {
+				try {
+					receiver.receive(lane, ((TextMessage) message).getText(), message);
+				} catch (JMSException e) {
+					throw JmsUtils.convertJmsAccessException(e);
+				}
+			});
+			registrar.registerEndpoint(endpoint);
+			log.info("Listener of lane {} - {}", lane, endpoint.getDestination());
+		}
+	}
+}
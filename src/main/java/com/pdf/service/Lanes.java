@@ -0,0 +1,126 @@
+package com.pdf.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Priority lanes, so small urgent jobs are not queued behind heavy renders.
+ *
+ * Every lane listed in {@code lanes.names} has its own queue
+ * {@code <activemq.queue.name>.<lane>}, its own listener with
+ * {@code lanes.<lane>.concurrency} consumers and
+ * {@code lanes.<lane>.render-capacity} render slots reserved in
+ * {@link RenderCapacity}. Jobs without lane use the {@value #DEFAULT} lane:
+ * the base queue and the shared render capacity.
+ *
+ * A job is assigned to a lane by its {@code lane} field, else by the
+ * {@code lane} setting of its template.
+ */
+@Log4j2
+@Component
+public class Lanes {
+
+	public static final String DEFAULT = "default";
+	/** render slots reserved for http requests, not a queue */
+	public static final String HTTP = "http";
+
+	private static final String LANE = "lane";
+
+	@Value("${activemq.queue.name}")
+	private String queue;
+	@Value("${lanes.names:}")
+	private String laneNames;
+
+	@Autowired
+	private Environment environment;
+	@Autowired
+	private TemplateSettings templateSettings;
+
+	private List<String> names;
+
+	@PostConstruct
+	public void init() {
+		names = Arrays.stream(laneNames.split(","))
+				.map(name -> name.trim().toLowerCase(Locale.ROOT))
+				.filter(name -> !name.isEmpty() && !DEFAULT.equals(name) && !HTTP.equals(name))
+				.distinct()
+				.collect(Collectors.toUnmodifiableList());
+		if (!names.isEmpty()) {
+			log.info("Lanes - {}", names);
+		}
+	}
+
+	/**
+	 * Configured lanes, without the default lane.
+	 *
+	 * @return
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * Queue of lane.
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public String queue(String lane) {
+		return DEFAULT.equals(lane) ? queue : queue + "." + lane;
+	}
+
+	public String getConcurrency(String lane) {
+		return environment.getProperty("lanes." + lane + ".concurrency", "1");
+	}
+
+	public int getRenderCapacity(String lane) {
+		return environment.getProperty("lanes." + lane + ".render-capacity", Integer.class, 1);
+	}
+
+	/**
+	 * Remove the {@code lane} field from message, it is no job variable.
+	 *
+	 * @param message
+	 */
+	public void strip(JsonNode message) {
+		if (message instanceof ObjectNode) {
+			((ObjectNode) message).remove(LANE);
+		}
+	}
+
+	/**
+	 * Lane of message: {@code lane} field, else {@code lane} setting of the
+	 * template. Unknown lanes fall back to the default lane.
+	 *
+	 * @param message
+	 * @return
+	 */
+	public String resolve(JsonNode message) {
+		if (names.isEmpty()) {
+			return DEFAULT;
+		}
+		String lane = message.path(LANE).asText("");
+		if (lane.isBlank()) {
+			String templateName = message.path("templateName").asText("");
+			if (!templateName.isBlank()) {
+				lane = templateSettings.get(templateName, LANE, DEFAULT);
+			}
+		}
+		lane = lane.trim().toLowerCase(Locale.ROOT);
+		return names.contains(lane) ? lane : DEFAULT;
+	}
+}
@@ -0,0 +1,141 @@
+package com.pdf.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Pinned consumers and adaptive render throttling for the listeners.
+ *
+ * Acknowledgements are deferred to the end of the upload stage and sent on the
+ * session of the consumer that received the message. Consumers are therefore
+ * pinned: every container runs a fixed number of consumers - a configured range
+ * is raised to its upper bound - so sessions stay open and containers are never
+ * stopped for scaling.
+ *
+ * With {@code activemq.listener.adaptive.enabled} the pdf-generator-listener
+ * runs {@code max-consumers} consumers, capped by the heap budget assuming
+ * every html2pdf conversion needs {@code heap-per-render-mb}. Load is adapted
+ * through the render slots of the default lane in {@link RenderCapacity}: every
+ * interval the limit is lowered by one when CPU or heap are above their limits,
+ * and raised by one while renders wait for a slot and there is headroom.
+ * Adapting never blocks the scheduler.
+ */
+@Log4j2
+@Component
+public class ListenerConcurrencyManager {
+
+	@Autowired
+	private JmsListenerEndpointRegistry registry;
+	@Autowired
+	private RenderCapacity renderCapacity;
+	@Autowired
+	private InFlightTracker inFlightTracker;
+
+	@Value("${activemq.listener.adaptive.enabled:false}")
+	private boolean enabled;
+	@Value("${activemq.listener.adaptive.min-renders:1}")
+	private int minRenders;
+	@Value("${activemq.listener.adaptive.max-consumers:0}")
+	private int maxConsumers;
+	@Value("${activemq.listener.adaptive.max-cpu-load:0.85}")
+	private double maxCpuLoad;
+	@Value("${activemq.listener.adaptive.max-heap-usage:0.75}")
+	private double maxHeapUsage;
+	@Value("${activemq.listener.adaptive.heap-per-render-mb:64}")
+	private long heapPerRenderMb;
+
+	/**
+	 * Pin consumers of all listener containers: a concurrency range would stop
+	 * idle consumers and close sessions with acknowledgements still pending.
+	 *
+	 * @param event
+	 */
+	@EventListener
+	public void pinConsumers(ContextRefreshedEvent event) {
+		for (MessageListenerContainer container : registry.getListenerContainers()) {
+			if (container instanceof DefaultMessageListenerContainer) {
+				DefaultMessageListenerContainer dmlc = (DefaultMessageListenerContainer) container;
+				int pinned = dmlc.getMaxConcurrentConsumers();
+				if (enabled && container == registry.getListenerContainer(Receiver.JMS_LISTENER_ID)) {
+					pinned = upperBound();
+				}
+				if (pinned != dmlc.getConcurrentConsumers()) {
+					log.info("Pin consumers of {} to {}", dmlc.getDestinationName(), pinned);
+					// concurrentConsumers must never exceed maxConcurrentConsumers
+					dmlc.setMaxConcurrentConsumers(Math.max(pinned, dmlc.getConcurrentConsumers()));
+					dmlc.setConcurrentConsumers(pinned);
+					dmlc.setMaxConcurrentConsumers(pinned);
+				}
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${activemq.listener.adaptive.interval-ms:10000}")
+	public void adjustRenderLimit() {
+		if (!enabled || inFlightTracker.isDraining()) {
+			return;
+		}
+
+		int current = renderCapacity.getLimit();
+		int waiting = renderCapacity.getWaiting(Lanes.DEFAULT);
+		double cpuLoad = cpuLoad();
+		double heapUsage = heapUsage();
+
+		int target = current;
+		if (cpuLoad > maxCpuLoad || heapUsage > maxHeapUsage) {
+			target = current - 1;
+		} else if (waiting > 0) {
+			target = current + 1;
+		}
+		target = Math.max(minRenders, Math.min(upperBound(), target));
+
+		if (target != current) {
+			log.info("Adjust render limit {} -> {} (waiting {}, cpu {}, heap {})", current, target, waiting,
+					String.format("%.2f", cpuLoad), String.format("%.2f", heapUsage));
+			renderCapacity.setLimit(target);
+		}
+	}
+
+	/**
+	 * Highest number of consumers and renders allowed by configuration and heap
+	 * budget.
+	 *
+	 * @return
+	 */
+	protected int upperBound() {
+		int configured = maxConsumers > 0 ? maxConsumers : Runtime.getRuntime().availableProcessors();
+		long heapBudget = (long) (Runtime.getRuntime().maxMemory() * maxHeapUsage);
+		int heapBound = (int) Math.max(1, heapBudget / (heapPerRenderMb * 1024 * 1024));
+		return Math.max(minRenders, Math.min(configured, heapBound));
+	}
+
+	protected double cpuLoad() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			double load = ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+			if (load >= 0) {
+				return load;
+			}
+		}
+		// fall back to load average per core
+		return Math.max(0, os.getSystemLoadAverage()) / os.getAvailableProcessors();
+	}
+
+	protected double heapUsage() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		return heap.getMax() > 0 ? (double) heap.getUsed() / heap.getMax() : 0;
+	}
+}
@@ -0,0 +1,137 @@
+package com.pdf.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Time-bucketed subdirectories of the barcode and pdf directories.
+ *
+ * Files are written to {@code <directory>/<yyyyMMdd-HHmm>/}, one bucket per
+ * {@code housekeeping.bucket-minutes} (UTC), so housekeeping drops whole buckets
+ * instead of checking every file. Bucket names sort chronologically.
+ *
+ * Spill files of pdfs still in use - uploads and their retries - are kept in
+ * {@code <directory.pdf>/spill/} outside the buckets, so quota eviction never
+ * removes them.
+ */
+@Component
+public class OutputDirectories {
+
+	private static final DateTimeFormatter BUCKET_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+	private static final String SPILL = "spill";
+
+	@Value("${directory.barcode}")
+	private String barcodeDir;
+	@Value("${directory.pdf}")
+	private String pdfDir;
+	@Value("${housekeeping.bucket-minutes:60}")
+	private long bucketMinutes;
+
+	/** last bucket created per directory */
+	private final Map<String, String> createdBuckets = new ConcurrentHashMap<>();
+	private volatile boolean spillCreated;
+
+	/**
+	 * File in the current bucket of the pdf directory.
+	 *
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	public File pdfFile(String name) throws IOException {
+		return currentBucket(pdfDir).resolve(name).toFile();
+	}
+
+	/**
+	 * File in the current bucket of the barcode directory.
+	 *
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	public File barcodeFile(String name) throws IOException {
+		return currentBucket(barcodeDir).resolve(name).toFile();
+	}
+
+	/**
+	 * Spill file, outside the buckets.
+	 *
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	public File spillFile(String name) throws IOException {
+		Path spill = getSpillDirectory();
+		if (!spillCreated) {
+			Files.createDirectories(spill);
+			spillCreated = true;
+		}
+		return spill.resolve(name).toFile();
+	}
+
+	public Path getSpillDirectory() {
+		return Paths.get(pdfDir, SPILL);
+	}
+
+	/**
+	 * Directories containing buckets.
+	 *
+	 * @return
+	 */
+	public List<Path> getDirectories() {
+		return List.of(Paths.get(barcodeDir), Paths.get(pdfDir));
+	}
+
+	public long getBucketMillis() {
+		return bucketMinutes * 60 * 1000;
+	}
+
+	/**
+	 * Name of the bucket for the given time.
+	 *
+	 * @param millis
+	 * @return
+	 */
+	public String bucketName(long millis) {
+		long start = millis - millis % getBucketMillis();
+		return BUCKET_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneOffset.UTC));
+	}
+
+	/**
+	 * Start time of bucket.
+	 *
+	 * @param name
+	 * @return start in millis, -1 if name is not a bucket name
+	 */
+	public long bucketStart(String name) {
+		try {
+			return LocalDateTime.parse(name, BUCKET_FORMAT).toInstant(ZoneOffset.UTC).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	private Path currentBucket(String directory) throws IOException {
+		String name = bucketName(System.currentTimeMillis());
+		Path bucket = Paths.get(directory, name);
+		if (!name.equals(createdBuckets.get(directory))) {
+			Files.createDirectories(bucket);
+			createdBuckets.put(directory, name);
+		}
+		return bucket;
+	}
+}
@@ -0,0 +1,103 @@
+package com.pdf.service;
+
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.WriterProperties;
+
+/**
+ * Size related output settings of a template, see {@link OutputProfiles}.
+ */
+public final class OutputProfile {
+
+	private final String name;
+	private final int compressionLevel;
+	private final boolean fullCompression;
+	private final int barcodeScaleFactor;
+	private final int imageDpi;
+	private final double imageMaxWidthMm;
+	private final float imageQuality;
+
+	OutputProfile(String name, int compressionLevel, boolean fullCompression, int barcodeScaleFactor, int imageDpi,
+			double imageMaxWidthMm, float imageQuality) {
+		this.name = name;
+		this.compressionLevel = compressionLevel;
+		this.fullCompression = fullCompression;
+		this.barcodeScaleFactor = barcodeScaleFactor;
+		this.imageDpi = imageDpi;
+		this.imageMaxWidthMm = imageMaxWidthMm;
+		this.imageQuality = imageQuality;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return deflate level 0-9, -1 for the iText default
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * @return object and xref streams
+	 */
+	public boolean isFullCompression() {
+		return fullCompression;
+	}
+
+	public int getBarcodeScaleFactor() {
+		return barcodeScaleFactor;
+	}
+
+	/**
+	 * @return target resolution of embedded images, 0 keeps them untouched
+	 */
+	public int getImageDpi() {
+		return imageDpi;
+	}
+
+	/**
+	 * Widest images are printed at this width, images are downsampled to
+	 * {@code imageDpi} at that width.
+	 * 
+	 * @return
+	 */
+	public double getImageMaxWidthMm() {
+		return imageMaxWidthMm;
+	}
+
+	/**
+	 * @return jpeg quality 0-1 of downsampled images
+	 */
+	public float getImageQuality() {
+		return imageQuality;
+	}
+
+	/**
+	 * Maximum width in pixels of embedded images.
+	 * 
+	 * @return 0 if images are not downsampled
+	 */
+	public int getImageMaxWidthPx() {
+		return imageDpi <= 0 ? 0 : (int) Math.round(imageMaxWidthMm / 25.4 * imageDpi);
+	}
+
+	/**
+	 * New WriterProperties of profile.
+	 * 
+	 * @return
+	 */
+	public WriterProperties createWriterProperties() {
+		WriterProperties properties = new WriterProperties();
+		properties.setCompressionLevel(
+				compressionLevel < 0 ? CompressionConstants.DEFAULT_COMPRESSION : compressionLevel);
+		properties.setFullCompressionMode(fullCompression);
+		return properties;
+	}
+
+	@Override
+	public String toString() {
+		return "OutputProfile [name=" + name + ", compressionLevel=" + compressionLevel + ", fullCompression="
+				+ fullCompression + ", barcodeScaleFactor=" + barcodeScaleFactor + ", imageDpi=" + imageDpi + "]";
+	}
+}
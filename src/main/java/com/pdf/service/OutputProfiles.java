@@ -0,0 +1,105 @@
+package com.pdf.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Output profiles by name. A template selects its profile by
+ * {@code output.profile} in template.properties, otherwise
+ * {@code output.profile} of the application is used.
+ *
+ * Two profiles are predefined, every setting can be overridden and new
+ * profiles can be added by properties:
+ *
+ * <pre>
+ * output-profile.&lt;name&gt;.compression-level=9        # 0-9, -1 iText default
+ * output-profile.&lt;name&gt;.full-compression=true      # object and xref streams
+ * output-profile.&lt;name&gt;.barcode-scale-factor=4
+ * output-profile.&lt;name&gt;.image-dpi=150              # 0 keeps images untouched
+ * output-profile.&lt;name&gt;.image-max-width-mm=210
+ * output-profile.&lt;name&gt;.image-quality=0.8
+ * </pre>
+ *
+ * {@code default} keeps the previous output, {@code compact} trades some CPU
+ * for considerably smaller files. Unknown names without any
+ * {@code output-profile.<name>.*} property are logged and use {@code default}.
+ */
+@Log4j2
+@Component
+public class OutputProfiles {
+
+	public static final String DEFAULT = "default";
+	public static final String COMPACT = "compact";
+
+	@Autowired
+	private Environment environment;
+	@Autowired
+	private TemplateSettings templateSettings;
+
+	@Value("${output.profile:default}")
+	private String defaultProfile;
+	@Value("${barcode.scale-factor:10}")
+	private int barcodeScaleFactor;
+
+	private final Map<String, OutputProfile> profiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Get profile of template.
+	 * 
+	 * @param templateName
+	 * @return
+	 */
+	public OutputProfile forTemplate(String templateName) {
+		return get(templateSettings.get(templateName, "output.profile", defaultProfile));
+	}
+
+	/**
+	 * Get profile by name.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public OutputProfile get(String name) {
+		OutputProfile profile = profiles.get(name);
+		if (profile != null) {
+			return profile;
+		}
+		if (!isDefined(name)) {
+			// remembered under the unknown name, so it is logged once
+			log.warn("Unknown output profile, {} is used - {}", DEFAULT, name);
+			profile = profiles.computeIfAbsent(DEFAULT, this::load);
+			profiles.putIfAbsent(name, profile);
+			return profile;
+		}
+		return profiles.computeIfAbsent(name, this::load);
+	}
+
+	private boolean isDefined(String name) {
+		return DEFAULT.equals(name) || COMPACT.equals(name) || Binder.get(environment)
+				.bind("output-profile." + name, Bindable.mapOf(String.class, String.class)).isBound();
+	}
+
+	private OutputProfile load(String name) {
+		boolean compact = COMPACT.equals(name);
+		String prefix = "output-profile." + name + ".";
+		OutputProfile profile = new OutputProfile(name,
+				environment.getProperty(prefix + "compression-level", Integer.class, compact ? 9 : -1),
+				environment.getProperty(prefix + "full-compression", Boolean.class, compact),
+				environment.getProperty(prefix + "barcode-scale-factor", Integer.class,
+						compact ? 4 : barcodeScaleFactor),
+				environment.getProperty(prefix + "image-dpi", Integer.class, compact ? 150 : 0),
+				environment.getProperty(prefix + "image-max-width-mm", Double.class, 210d),
+				environment.getProperty(prefix + "image-quality", Float.class, 0.8f));
+		log.info("Load output profile - {}", profile);
+		return profile;
+	}
+}
@@ -0,0 +1,349 @@
+package com.pdf.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import com.itextpdf.html2pdf.ConverterProperties;
+import com.itextpdf.html2pdf.HtmlConverter;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.StampingProperties;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.layout.Canvas;
+import com.itextpdf.layout.property.TextAlignment;
+import com.pdf.cache.FontSetCache;
+import com.pdf.cache.LruCache;
+import com.pdf.cache.StaticContentCache;
+import com.pdf.model.PdfJob;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Overlay render mode: the static layer of a template is converted by html2pdf
+ * once per template and language, every job only stamps its fields and barcode
+ * on top of it. Jobs are stamped in append mode: the background bytes are
+ * written unchanged and only the overlay is added, so the cost per job does
+ * not grow with the fonts and images of the background.
+ *
+ * Enabled by {@code render.mode=overlay} in template.properties:
+ *
+ * <pre>
+ * overlay.background=background.html
+ * overlay.font=fonts/DejaVuSans.ttf
+ * overlay.font-size=10
+ * # variable = x,y[,size[,left|center|right]] in mm from the top left corner, y is the bottom of the text
+ * overlay.field.firstname=20,62
+ * overlay.field.pinCode=105,120,14,center
+ * # x,y,width,height in mm from the top left corner
+ * overlay.barcode=70,130,70,20
+ * </pre>
+ *
+ * The background is a Thymeleaf template like template.html, it only sees the
+ * static content of the template and no job variables. Positions are parsed
+ * once per template; invalid entries are logged and skipped. The template
+ * {@code overlay} is an example.
+ */
+@Log4j2
+@Component
+public class OverlayRenderer implements MeterBinder {
+
+	private static final float POINTS_PER_MM = 72f / 25.4f;
+	private static final String FIELD_PREFIX = "overlay.field.";
+
+	@Value("${template-folder}")
+	private String templateFolder;
+	@Value("${overlay.background-cache.max-bytes:33554432}")
+	private long maxBytes;
+
+	@Autowired
+	private TemplateEngine templateEngine;
+	@Autowired
+	private TemplateSettings templateSettings;
+	@Autowired
+	private FontSetCache fontSetCache;
+	@Autowired
+	private StaticContentCache staticContentCache;
+	@Autowired
+	private OutputProfiles outputProfiles;
+
+	/** rendered backgrounds by template and language */
+	private LruCache<BackgroundKey, byte[]> backgrounds;
+	/** parsed overlay settings by template */
+	private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		backgrounds = new LruCache<>(maxBytes, background -> background.length);
+	}
+
+	/**
+	 * Is overlay mode enabled for template.
+	 *
+	 * @param templateName
+	 * @return
+	 */
+	public boolean isEnabled(String templateName) {
+		return "overlay".equalsIgnoreCase(templateSettings.get(templateName, "render.mode", "html"));
+	}
+
+	/**
+	 * Render job on the cached background.
+	 *
+	 * @param job
+	 * @param barcode {@code null} if the job has no barcode
+	 * @param os
+	 * @throws IOException
+	 */
+	public void render(PdfJob job, BarcodeMatrix barcode, OutputStream os) throws IOException {
+
+		var templateName = job.getTemplateName();
+		Layout layout = layouts.computeIfAbsent(templateName, this::loadLayout);
+		byte[] background = getBackground(templateName, job.getLocale());
+
+		// append mode writes the background bytes unchanged, only the overlay is
+		// added - its fonts and images are neither parsed nor copied per job
+		try (PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(background)),
+				new PdfWriter(os, outputProfiles.forTemplate(templateName).createWriterProperties()),
+				new StampingProperties().useAppendMode())) {
+
+			PdfPage page = pdf.getFirstPage();
+			Rectangle pageSize = page.getPageSize();
+			PdfCanvas pdfCanvas = new PdfCanvas(page);
+
+			if (barcode != null) {
+				drawBarcode(templateName, layout, barcode, pdfCanvas, pageSize);
+			}
+			drawFields(job, layout, pdf, pdfCanvas, pageSize);
+		}
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		backgrounds.removeIf(key -> event.affects(key.templateName));
+		layouts.keySet().removeIf(event::affects);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		backgrounds.bindTo(registry, "pdf.cache.overlay");
+	}
+
+	private byte[] getBackground(String templateName, Locale locale) throws IOException {
+
+		BackgroundKey key = new BackgroundKey(templateName, locale);
+		byte[] background = backgrounds.get(key);
+		if (background != null) {
+			return background;
+		}
+
+		String backgroundTemplate = FilenameUtils
+				.removeExtension(templateSettings.get(templateName, "overlay.background", "background.html"));
+		log.info("Render overlay background - {}/{} - {}", templateName, backgroundTemplate, locale);
+
+		Context ctx = new Context(locale);
+		staticContentCache.getContent(templateName).forEach(ctx::setVariable);
+		String html = templateEngine.process(templateName + "/" + backgroundTemplate, ctx);
+
+		ConverterProperties properties = new ConverterProperties();
+		properties.setFontProvider(fontSetCache.createFontProvider(templateName));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		// written with the output profile, the bytes are reused as they are
+		HtmlConverter.convertToPdf(html,
+				new PdfWriter(os, outputProfiles.forTemplate(templateName).createWriterProperties()), properties);
+
+		background = os.toByteArray();
+		backgrounds.put(key, background);
+		return background;
+	}
+
+	private void drawFields(PdfJob job, Layout layout, PdfDocument pdf, PdfCanvas pdfCanvas, Rectangle pageSize)
+			throws IOException {
+
+		if (layout.fields.isEmpty()) {
+			return;
+		}
+
+		try (Canvas canvas = new Canvas(pdfCanvas, pdf, pageSize)) {
+			canvas.setFont(createFont(job.getTemplateName()));
+			for (Field field : layout.fields) {
+				Object value = job.getVariables().get(field.variable);
+				if (value == null || StringUtils.isBlank(value.toString())) {
+					continue;
+				}
+				canvas.setFontSize(field.fontSize > 0 ? field.fontSize : layout.fontSize);
+				canvas.showTextAligned(value.toString(), field.x, pageSize.getHeight() - field.y, field.alignment);
+			}
+		}
+	}
+
+	private void drawBarcode(String templateName, Layout layout, BarcodeMatrix barcode, PdfCanvas pdfCanvas,
+			Rectangle pageSize) {
+
+		float[] box = layout.barcode;
+		if (box == null) {
+			log.warn("Overlay barcode has no position - {}", templateName);
+			return;
+		}
+
+		float left = box[0];
+		float top = pageSize.getHeight() - box[1];
+		float moduleWidth = box[2] / barcode.getWidth();
+		float moduleHeight = box[3] / barcode.getHeight();
+
+		pdfCanvas.saveState().setFillColor(ColorConstants.BLACK);
+		barcode.forEachRect((x, y, width, height) -> pdfCanvas.rectangle(left + x * moduleWidth,
+				top - (y + height) * moduleHeight, width * moduleWidth, height * moduleHeight));
+		pdfCanvas.fill().restoreState();
+	}
+
+	/**
+	 * Parse and validate overlay settings once per template. Invalid entries are
+	 * logged and skipped.
+	 *
+	 * @param templateName
+	 * @return
+	 */
+	private Layout loadLayout(String templateName) {
+
+		Layout layout = new Layout();
+		try {
+			layout.fontSize = Float.parseFloat(templateSettings.get(templateName, "overlay.font-size", "10"));
+		} catch (NumberFormatException e) {
+			log.error("Invalid overlay.font-size, 10 is used - {}", templateName);
+			layout.fontSize = 10;
+		}
+
+		for (Map.Entry<String, String> setting : templateSettings.getAll(templateName, FIELD_PREFIX).entrySet()) {
+			try {
+				layout.fields.add(new Field(setting.getKey(), StringUtils.split(setting.getValue(), ',')));
+			} catch (IllegalArgumentException e) {
+				log.error("Invalid overlay field, ignored - {} - {}={} - {}", templateName,
+						FIELD_PREFIX + setting.getKey(), setting.getValue(), e.getMessage());
+			}
+		}
+
+		String barcode = templateSettings.get(templateName, "overlay.barcode", null);
+		if (barcode != null) {
+			String[] box = StringUtils.split(barcode, ',');
+			try {
+				if (box.length != 4) {
+					throw new IllegalArgumentException("x,y,width,height expected");
+				}
+				layout.barcode = new float[] { mm(box[0]), mm(box[1]), mm(box[2]), mm(box[3]) };
+			} catch (IllegalArgumentException e) {
+				log.error("Invalid overlay.barcode, ignored - {} - {} - {}", templateName, barcode, e.getMessage());
+			}
+		}
+		return layout;
+	}
+
+	private PdfFont createFont(String templateName) throws IOException {
+		String font = templateSettings.get(templateName, "overlay.font", null);
+		if (font == null) {
+			return PdfFontFactory.createFont(StandardFonts.HELVETICA);
+		}
+		// font programs are cached by iText, the PdfFont belongs to the document
+		return PdfFontFactory.createFont(templateFolder + templateName + "/" + font, PdfEncodings.IDENTITY_H, true,
+				true);
+	}
+
+	private static float mm(String value) {
+		return Float.parseFloat(value.trim()) * POINTS_PER_MM;
+	}
+
+	/**
+	 * Parsed overlay settings of a template, positions in points.
+	 */
+	private static final class Layout {
+
+		private final List<Field> fields = new ArrayList<>();
+		private float fontSize;
+		/** x, y from the top, width, height - {@code null} if not configured */
+		private float[] barcode;
+	}
+
+	private static final class Field {
+
+		private final String variable;
+		private final float x;
+		/** bottom of the text from the top of the page */
+		private final float y;
+		/** 0 for the default size */
+		private final float fontSize;
+		private final TextAlignment alignment;
+
+		/**
+		 * @param variable
+		 * @param position x,y[,size[,left|center|right]] in mm
+		 * @throws IllegalArgumentException if position is invalid
+		 */
+		Field(String variable, String[] position) {
+			if (position.length < 2 || position.length > 4) {
+				throw new IllegalArgumentException("x,y[,size[,align]] expected");
+			}
+			this.variable = variable;
+			this.x = mm(position[0]);
+			this.y = mm(position[1]);
+			this.fontSize = position.length > 2 ? Float.parseFloat(position[2].trim()) : 0;
+			this.alignment = position.length > 3
+					? TextAlignment.valueOf(position[3].trim().toUpperCase(Locale.ROOT))
+					: TextAlignment.LEFT;
+		}
+	}
+
+	private static final class BackgroundKey {
+
+		private final String templateName;
+		private final Locale locale;
+
+		BackgroundKey(String templateName, Locale locale) {
+			this.templateName = templateName;
+			this.locale = locale;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof BackgroundKey)) {
+				return false;
+			}
+			BackgroundKey other = (BackgroundKey) obj;
+			return templateName.equals(other.templateName) && locale.equals(other.locale);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * templateName.hashCode() + locale.hashCode();
+		}
+	}
+}
@@ -1,22 +1,24 @@
 package com.pdf.service;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
 
-import javax.imageio.ImageIO;
-
-import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,8 +30,12 @@ import org.thymeleaf.context.Context;
 
 import com.itextpdf.html2pdf.ConverterProperties;
 import com.itextpdf.html2pdf.HtmlConverter;
-import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
 import com.itextpdf.io.codec.Base64;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.kernel.utils.PdfMerger;
 import com.itextpdf.layout.font.FontProvider;
 import com.itextpdf.text.pdf.Barcode;
 import com.itextpdf.text.pdf.Barcode128;
@@ -37,24 +43,73 @@ import com.itextpdf.text.pdf.Barcode39;
 import com.itextpdf.text.pdf.BarcodeDatamatrix;
 import com.itextpdf.text.pdf.BarcodeEAN;
 import com.itextpdf.text.pdf.BarcodePDF417;
+import com.pdf.cache.BarcodeCache;
+import com.pdf.cache.FontSetCache;
+import com.pdf.cache.ImageDownsampler;
+import com.pdf.cache.RemoteResourceCache;
+import com.pdf.cache.RenderResultCache;
+import com.pdf.cache.RenderResultCache.ResultKey;
+import com.pdf.cache.StaticContentCache;
 import com.pdf.exception.UnknownBarcodeException;
+import com.pdf.model.PdfBatchJob;
+import com.pdf.model.PdfBatchJob.Output;
+import com.pdf.model.PdfJob;
+import com.pdf.service.RenderMetrics.Stage;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
 @Component
 public class PdfGenerator {
 
+	/** template variable holding the variables of all jobs rendered in one pass */
+	public static final String POSITIONS = "positions";
+
 	@Value("${directory.barcode}")
 	private String barcodeDir;
 	@Value("${directory.pdf}")
 	private String pdfDir;
+	@Value("${pdf.persist:false}")
+	private boolean persistPdf;
+	@Value("${pdf.memory-threshold-bytes:4194304}")
+	private int memoryThreshold;
+	@Value("${barcode.write-files:false}")
+	private boolean writeBarcodeFiles;
+	@Value("${barcode.scale-factor:10}")
+	private int barcodeScaleFactor;
+	@Value("${barcode.rendering:raster}")
+	private String defaultBarcodeRendering;
+	@Value("${barcode.vector-height-mm:12}")
+	private double barcodeVectorHeightMm;
 
 	@Value("${template-folder}")
 	private String templateFolder;
 
 	@Autowired
 	private TemplateEngine templateEngine;
+	@Autowired
+	private FontSetCache fontSetCache;
+	@Autowired
+	private StaticContentCache staticContentCache;
+	@Autowired
+	private BarcodeCache barcodeCache;
+	@Autowired
+	private TemplateSettings templateSettings;
+	@Autowired
+	private RemoteResourceCache remoteResourceCache;
+	@Autowired
+	private RenderResultCache resultCache;
+	@Autowired
+	private ImageDownsampler imageDownsampler;
+	@Autowired
+	private OutputProfiles outputProfiles;
+	@Autowired
+	private OverlayRenderer overlayRenderer;
+	@Autowired
+	private OutputDirectories outputDirectories;
+	@Autowired
+	private RenderMetrics metrics;
 
 	@EventListener
 	public void onApplicationEvent(ContextRefreshedEvent event) {
@@ -73,173 +128,548 @@ public class PdfGenerator {
 		EAN13,
 		EAN128,
 		ECC200,
-		PDF417
+		PDF417;
+
+		/**
+		 * Valid code of this type, used by the warm-up and the benchmarks.
+		 * 
+		 * @return
+		 */
+		public String sampleCode() {
+			switch (this) {
+			case EAN13:
+				return "4006381333931";
+			case EAN128:
+				return "(01)04006381333931";
+			case C128A:
+				// raw code 128: start B followed by code values
+				return "hSAMPLE1234";
+			case C39:
+				return "SAMPLE1234";
+			default:
+				return "SAMPLE-1234567890";
+			}
+		}
+	}
+
+	/**
+	 * RASTER embeds the barcode as png data uri, VECTOR as inline svg.
+	 */
+	public enum BarcodeRendering {
+		RASTER,
+		VECTOR
 	}
 
 	/**
 	 * Generate pdf.
 	 * 
-	 * @param templateName
-	 * @param data
-	 * @param language
-	 * @param filename
+	 * @param job
+	 * @return
 	 * @throws IOException
 	 * @throws UnknownBarcodeException
 	 */
-	public File generatePdf(Map<String, Object> data) throws IOException, UnknownBarcodeException {
+	public RenderedPdf generatePdf(PdfJob job) throws IOException, UnknownBarcodeException {
+
+		var templateName = job.getTemplateName();
+		var filename = job.getFilename();
+
+		// duplicates of recently rendered jobs are only delivered again
+		ResultKey resultKey = resultCache.key(job, resolveBarcodeRendering(templateName, job.getBarcodeRendering()));
+		RenderedPdf cached = resultCache.get(resultKey, filename);
+		if (cached != null) {
+			log.info("Use cached pdf - {}", resultKey);
+			if (persistPdf) {
+				cached.writeTo(outputDirectories.pdfFile(filename));
+			}
+			metrics.output(job, outputProfiles.forTemplate(templateName), cached, true);
+			return cached;
+		}
 
-		// Extract necessary fields from message
-		var templateName = (String) data.get("templateName");
-		var language = (String) data.get("language");
-		var filename = (String) data.get("filename");
+		Timer.Sample render = metrics.start();
 
-		Locale locale = null;
-		if (StringUtils.isBlank(language)) {
-			locale = Locale.ENGLISH;
-		} else {
-			locale = Locale.forLanguageTag(language);
+		// Suffix .pdf already exists in filename, pdf spills to disk above threshold
+		File spillFile = outputDirectories.spillFile(UUID.randomUUID() + ".spill");
+		DeferredFileOutputStream os = new DeferredFileOutputStream(memoryThreshold, spillFile);
+		try (os) {
+			render(job, os);
+		} catch (IOException | UnknownBarcodeException | RuntimeException e) {
+			Files.deleteIfExists(spillFile.toPath());
+			throw e;
 		}
 
-		Context ctx = new Context(locale);
-		ctx.setVariables(data);
+		RenderedPdf pdf = new RenderedPdf(filename, os);
+		resultCache.put(resultKey, pdf);
+		if (persistPdf) {
+			pdf.writeTo(outputDirectories.pdfFile(filename));
+		}
 
-		// load barcode if necessary
-		loadBarcode(ctx, data);
-		// adding additional images to context
-		loadAdditionalContent(ctx, data);
+		OutputProfile profile = outputProfiles.forTemplate(templateName);
+		metrics.stop(render, Stage.RENDER, job);
+		metrics.profile(render, job, profile);
+		metrics.output(job, profile, pdf, false);
+		return pdf;
+	}
 
-		// fill thymeleaf template with data
-		String processedHtml = templateEngine.process(templateName + "/template", ctx);
+	/**
+	 * Generate pdf directly into the given stream, without spill file. The stream
+	 * is closed when the pdf is complete.
+	 * 
+	 * @param job
+	 * @param os
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	public void generatePdf(PdfJob job, OutputStream os) throws IOException, UnknownBarcodeException {
+
+		ResultKey resultKey = resultCache.key(job, resolveBarcodeRendering(job.getTemplateName(),
+				job.getBarcodeRendering()));
+		RenderedPdf cached = resultCache.get(resultKey, job.getFilename());
+		if (cached != null) {
+			log.info("Use cached pdf - {}", resultKey);
+			try (os) {
+				os.write(cached.getData());
+			}
+			metrics.output(job, outputProfiles.forTemplate(job.getTemplateName()), cached, true);
+			return;
+		}
+
+		Timer.Sample render = metrics.start();
+		render(job, os);
+		metrics.stop(render, Stage.RENDER, job);
+		metrics.profile(render, job, outputProfiles.forTemplate(job.getTemplateName()));
+	}
 
-		// Suffix .pdf already exists in filename
-		File pdfFile = new File(pdfDir + filename);
-		try (FileOutputStream os = new FileOutputStream(pdfFile)) {
+	/**
+	 * Generate pdfs of all positions of a batch: one merged pdf or one pdf per
+	 * position.
+	 * 
+	 * @param batch
+	 * @return
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	public List<RenderedPdf> generatePdfs(PdfBatchJob batch) throws IOException, UnknownBarcodeException {
 
-			// Load fonts
-			ConverterProperties properties = new ConverterProperties();
-			FontProvider fontProvider = createFontProvider(templateName);
-			properties.setFontProvider(fontProvider);
+		if (batch.getOutput() == Output.MERGED) {
+			return List.of(generateMergedPdf(batch));
+		}
 
-			log.info("Generate pdf ...");
-			HtmlConverter.convertToPdf(processedHtml, os, properties);
-			return pdfFile;
+		// template, static content and font set are cached after the first position
+		List<RenderedPdf> pdfs = new ArrayList<>(batch.getJobs().size());
+		try {
+			for (PdfJob job : batch.getJobs()) {
+				pdfs.add(generatePdf(job));
+			}
+		} catch (IOException | UnknownBarcodeException | RuntimeException e) {
+			for (RenderedPdf pdf : pdfs) {
+				pdf.close();
+			}
+			throw e;
 		}
+		return pdfs;
 	}
 
 	/**
-	 * Create FontProvider for template.
+	 * Generate one pdf containing all positions of the batch.
 	 * 
-	 * @param templateName
+	 * @param batch
 	 * @return
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
 	 */
-	protected FontProvider createFontProvider(String templateName) {
+	protected RenderedPdf generateMergedPdf(PdfBatchJob batch) throws IOException, UnknownBarcodeException {
 
-		FontProvider fontProvider = new DefaultFontProvider(true, true, true);
+		PdfJob first = batch.getFirstJob();
+		Timer.Sample render = metrics.start();
 
-		log.info("Load fonts ...");
+		log.info("Generate merged pdf - {}", batch);
 
-		File fontFolder = new File(templateFolder + templateName + "/fonts");
-		if (fontFolder.exists()) {
-			for (File font : fontFolder.listFiles()) {
+		File spillFile = outputDirectories.spillFile(UUID.randomUUID() + ".spill");
+		DeferredFileOutputStream os = new DeferredFileOutputStream(memoryThreshold, spillFile);
+		try (os) {
+			if (overlayRenderer.isEnabled(first.getTemplateName())) {
+				mergePositions(batch, os);
+			} else {
+				renderHtml(batch.getJobs(), os);
+			}
+		} catch (IOException | UnknownBarcodeException | RuntimeException e) {
+			Files.deleteIfExists(spillFile.toPath());
+			throw e;
+		}
 
-				log.info("Load font - {}", font.getPath());
+		RenderedPdf pdf = new RenderedPdf(batch.getFilename(), os);
+		if (persistPdf) {
+			pdf.writeTo(outputDirectories.pdfFile(batch.getFilename()));
+		}
 
-				if (!fontProvider.addFont(font.getAbsolutePath())) {
-					log.error("Font could not be loaded - {}", font);
+		OutputProfile profile = outputProfiles.forTemplate(first.getTemplateName());
+		metrics.stop(render, Stage.RENDER, first);
+		metrics.profile(render, first, profile);
+		metrics.output(first, profile, pdf, false);
+		return pdf;
+	}
+
+	/**
+	 * Stamp every position of an overlay template on its own and append its
+	 * pages. The background is cached after the first position.
+	 * 
+	 * @param batch
+	 * @param os
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected void mergePositions(PdfBatchJob batch, OutputStream os) throws IOException, UnknownBarcodeException {
+
+		WriterProperties writerProperties = outputProfiles.forTemplate(batch.getFirstJob().getTemplateName())
+				.createWriterProperties();
+		try (PdfDocument pdf = new PdfDocument(new PdfWriter(os, writerProperties))) {
+			PdfMerger merger = new PdfMerger(pdf);
+			for (PdfJob job : batch.getJobs()) {
+				ByteArrayOutputStream position = new ByteArrayOutputStream();
+				renderOverlay(job, position);
+				try (PdfDocument source = new PdfDocument(
+						new PdfReader(new ByteArrayInputStream(position.toByteArray())))) {
+					merger.merge(source, 1, source.getNumberOfPages());
 				}
 			}
 		}
-		return fontProvider;
 	}
 
 	/**
-	 * Load additional content for template.
+	 * Render job in overlay or html mode.
+	 * 
+	 * @param job
+	 * @param os
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected void render(PdfJob job, OutputStream os) throws IOException, UnknownBarcodeException {
+		if (overlayRenderer.isEnabled(job.getTemplateName())) {
+			renderOverlay(job, os);
+		} else {
+			renderHtml(job, os);
+		}
+	}
+
+	/**
+	 * Render job by Thymeleaf and html2pdf.
+	 * 
+	 * @param job
+	 * @param os
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected void renderHtml(PdfJob job, OutputStream os) throws IOException, UnknownBarcodeException {
+		renderHtml(List.of(job), os);
+	}
+
+	/**
+	 * Render jobs of one template by Thymeleaf and html2pdf in one pass, into one
+	 * document. Static content and fonts are loaded once, barcodes and remote
+	 * images per job.
+	 * 
+	 * The variables of every job are in the {@code positions} list of the context,
+	 * the template renders them with {@code th:each} and
+	 * {@code pdf:variables} (see {@link PositionDialect}), separated by
+	 * page-break-before. A single job is also set as root variables, so
+	 * templates without positions loop still render single jobs.
+	 * 
+	 * @param jobs
+	 * @param os
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected void renderHtml(List<PdfJob> jobs, OutputStream os) throws IOException, UnknownBarcodeException {
+
+		PdfJob job = jobs.get(0);
+		var templateName = job.getTemplateName();
+
+		List<Map<String, Object>> positions = new ArrayList<>(jobs.size());
+		for (PdfJob position : jobs) {
+			positions.add(positionVariables(position));
+		}
+
+		Context ctx = new Context(job.getLocale());
+		if (jobs.size() == 1) {
+			ctx.setVariables(positions.get(0));
+		}
+		ctx.setVariable(POSITIONS, positions);
+
+		// adding additional images to context
+		Timer.Sample stage = metrics.start();
+		loadAdditionalContent(ctx, job);
+		metrics.stop(stage, Stage.STATIC_CONTENT, job);
+
+		// fill thymeleaf template with data
+		stage = metrics.start();
+		String html = templateEngine.process(templateName + "/template", ctx);
+		metrics.stop(stage, Stage.THYMELEAF, job);
+
+		ConverterProperties properties = createConverterProperties(job);
+
+		log.info("Generate pdf ...");
+		stage = metrics.start();
+		HtmlConverter.convertToPdf(html,
+				new PdfWriter(os, outputProfiles.forTemplate(templateName).createWriterProperties()), properties);
+		metrics.stop(stage, Stage.HTML2PDF, job);
+	}
+
+	/**
+	 * Template variables of job with barcode and remote images.
+	 * 
+	 * @param job
+	 * @return
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	private Map<String, Object> positionVariables(PdfJob job) throws IOException, UnknownBarcodeException {
+
+		Context ctx = new Context(job.getLocale());
+		ctx.setVariables(job.getVariables());
+
+		// load barcode if necessary
+		Timer.Sample stage = metrics.start();
+		loadBarcode(ctx, job);
+		metrics.stop(stage, Stage.BARCODE, job);
+
+		// replace remote image urls by cached data uris
+		stage = metrics.start();
+		loadRemoteResources(ctx, job);
+		metrics.stop(stage, Stage.REMOTE_RESOURCES, job);
+
+		Map<String, Object> variables = new LinkedHashMap<>();
+		for (String name : ctx.getVariableNames()) {
+			variables.put(name, ctx.getVariable(name));
+		}
+		return variables;
+	}
+
+	private ConverterProperties createConverterProperties(PdfJob job) {
+		// Load fonts
+		Timer.Sample stage = metrics.start();
+		ConverterProperties properties = new ConverterProperties();
+		properties.setFontProvider(createFontProvider(job.getTemplateName()));
+		properties.setCharset(StandardCharsets.UTF_8.name());
+		metrics.stop(stage, Stage.FONT_PROVIDER, job);
+		return properties;
+	}
+
+	/**
+	 * Render job by stamping fields and barcode on the cached background of the
+	 * template.
+	 * 
+	 * @param job
+	 * @param os
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected void renderOverlay(PdfJob job, OutputStream os) throws IOException, UnknownBarcodeException {
+
+		BarcodeMatrix barcode = null;
+		if (StringUtils.isNotBlank(job.getBarcode())) {
+			Timer.Sample stage = metrics.start();
+			barcode = createBarcodeMatrix(job.getBarcodeType(), job.getBarcode());
+			metrics.stop(stage, Stage.BARCODE, job);
+		}
+
+		log.info("Generate overlay pdf ...");
+		Timer.Sample stage = metrics.start();
+		overlayRenderer.render(job, barcode, os);
+		metrics.stop(stage, Stage.OVERLAY, job);
+	}
+
+	/**
+	 * Create FontProvider for template.
 	 * 
 	 * @param templateName
+	 * @return
+	 */
+	protected FontProvider createFontProvider(String templateName) {
+		return fontSetCache.createFontProvider(templateName);
+	}
+
+	/**
+	 * Load additional content for template.
+	 * 
 	 * @param ctx
+	 * @param job
 	 * @throws IOException
 	 */
-	protected void loadAdditionalContent(Context ctx, Map<String, Object> data) throws IOException {
+	protected void loadAdditionalContent(Context ctx, PdfJob job) throws IOException {
 
 		log.info("Load additional content ...");
 
-		var templateName = (String) data.get("templateName");
+		staticContentCache.getContent(job.getTemplateName()).forEach(ctx::setVariable);
+	}
 
-		File staticFolder = new File(templateFolder + templateName + "/static");
-		if (staticFolder.exists()) {
-			for (File content : staticFolder.listFiles()) {
+	/**
+	 * Replace remote image urls of template variables by cached data uris. If an
+	 * image cannot be loaded the variable is emptied and the image left out. Images
+	 * are downsampled as configured by the output profile of the template.
+	 * 
+	 * @param ctx
+	 * @param job
+	 */
+	protected void loadRemoteResources(Context ctx, PdfJob job) {
 
-				log.info("Load additional content - {}", content.getPath());
+		if (!remoteResourceCache.isEnabled()) {
+			return;
+		}
 
-				String contentBase64 = Base64.encodeBytes(Files.readAllBytes(Paths.get(content.getAbsolutePath())));
-				ctx.setVariable(FilenameUtils.removeExtension(content.getName()), contentBase64);
+		OutputProfile profile = outputProfiles.forTemplate(job.getTemplateName());
+		int maxWidthPx = profile.getImageMaxWidthPx();
+
+		for (String variable : remoteResourceCache.getVariables()) {
+			Object value = job.getVariables().get(variable);
+			if (value instanceof String && StringUtils.startsWithAny((String) value, "http://", "https://")) {
+				try {
+					String dataUri = remoteResourceCache.getDataUri((String) value);
+					if (maxWidthPx > 0) {
+						String downsampled = imageDownsampler.downsample((String) value, dataUri, maxWidthPx,
+								profile.getImageQuality());
+						// base64 length to bytes
+						metrics.imageBytesSaved(job, profile, (dataUri.length() - downsampled.length()) * 3L / 4);
+						dataUri = downsampled;
+					}
+					ctx.setVariable(variable, dataUri);
+				} catch (IOException e) {
+					// html2pdf must not fetch it again, the image is left out
+					log.warn("Remote resource could not be loaded - {} - {}", value, e.getMessage());
+					ctx.setVariable(variable, "");
+				}
 			}
 		}
 	}
 
 	/**
-	 * Load additional content for template.
+	 * Load barcode for template.
 	 * 
-	 * @param templateName
 	 * @param ctx
+	 * @param job
 	 * @throws IOException
 	 * @throws UnknownBarcodeException
 	 */
-	protected void loadBarcode(Context ctx, Map<String, Object> data) throws IOException, UnknownBarcodeException {
+	protected void loadBarcode(Context ctx, PdfJob job) throws IOException, UnknownBarcodeException {
 
-		// only generate Barcod?e by BarcodeType if barcode is not blank
-		var barcode = (String) data.get("barcode");
+		// only generate Barcode by BarcodeType if barcode is not blank
+		var barcode = job.getBarcode();
 
 		if (StringUtils.isNotBlank(barcode)) {
-			log.info("Create barcode png ...");
+			var filename = job.getFilename();
+
+			BarcodeType type = job.getBarcodeType();
+			BarcodeRendering rendering = resolveBarcodeRendering(job.getTemplateName(), job.getBarcodeRendering());
 
-			var barcodeType = (String) data.get("barcodeType");
-			var filename = (String) data.get("filename");
+			if (rendering == BarcodeRendering.VECTOR) {
+				String barcodeSvg = barcodeCache.get(type, rendering, 0, barcode);
+				if (barcodeSvg == null) {
+					log.info("Create barcode svg ...");
+					barcodeSvg = generateBarcodeSVG(type, barcode);
+					barcodeCache.put(type, rendering, 0, barcode, barcodeSvg);
+				}
+
+				if (writeBarcodeFiles) {
+					Files.write(outputDirectories.barcodeFile(filename + ".svg").toPath(), barcodeSvg.getBytes(StandardCharsets.UTF_8));
+				}
 
-			File barcodeFile = generateBarcodePNG(barcodeType, barcode, filename);
-			String barcodeBase64 = Base64.encodeBytes(Files.readAllBytes(Paths.get(barcodeFile.getAbsolutePath())));
+				// set barcodeSvg
+				ctx.setVariable("barcodeSvg", barcodeSvg);
+			} else {
+				int scale = outputProfiles.forTemplate(job.getTemplateName()).getBarcodeScaleFactor();
+				String barcodeBase64 = barcodeCache.get(type, rendering, scale, barcode);
+				if (barcodeBase64 == null) {
+					log.info("Create barcode png ...");
+					barcodeBase64 = Base64.encodeBytes(generateBarcodePNG(type, barcode, scale));
+					barcodeCache.put(type, rendering, scale, barcode, barcodeBase64);
+				}
 
-			// set barcodeBase64
-			ctx.setVariable("barcodeBase64", barcodeBase64);
+				if (writeBarcodeFiles) {
+					Files.write(outputDirectories.barcodeFile(filename + ".png").toPath(), Base64.decode(barcodeBase64));
+				}
+
+				// set barcodeBase64
+				ctx.setVariable("barcodeBase64", barcodeBase64);
+			}
 		}
 	}
 
 	/**
-	 * Generate barcode png.
+	 * Resolve BarcodeRendering by message, template settings or default.
+	 * 
+	 * @param templateName
+	 * @param requested
+	 * @return
+	 */
+	protected BarcodeRendering resolveBarcodeRendering(String templateName, String requested) {
+		String rendering = StringUtils.isNotBlank(requested) ? requested
+				: templateSettings.get(templateName, "barcode.rendering", defaultBarcodeRendering);
+		try {
+			return BarcodeRendering.valueOf(rendering.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			log.warn("BarcodeRendering is unknown, use RASTER - {}", rendering);
+			return BarcodeRendering.RASTER;
+		}
+	}
+
+	/**
+	 * Generate barcode png in memory.
 	 * 
 	 * @param type
 	 * @param code
-	 * @param filename
 	 * @return
-	 * @throws FileNotFoundException
 	 * @throws IOException
 	 * @throws UnknownBarcodeException
 	 */
-	protected File generateBarcodePNG(String sBarcodeType, String code, String filename)
-			throws FileNotFoundException, IOException, UnknownBarcodeException {
+	protected byte[] generateBarcodePNG(BarcodeType type, String code) throws IOException, UnknownBarcodeException {
+		return generateBarcodePNG(type, code, barcodeScaleFactor);
+	}
 
-		try {
+	/**
+	 * Generate barcode png in memory with the given scale factor.
+	 * 
+	 * @param type
+	 * @param code
+	 * @param scaleFactor
+	 * @return
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected byte[] generateBarcodePNG(BarcodeType type, String code, int scaleFactor)
+			throws IOException, UnknownBarcodeException {
 
-			BarcodeType type = BarcodeType.valueOf(sBarcodeType);
-			Image image = createBarcodeImage(type, code);
-			// scale image
-			int scaleFactor = 10;
-			image = image.getScaledInstance(image.getWidth(null) * scaleFactor, image.getHeight(null) * scaleFactor, Image.SCALE_DEFAULT);
-			BufferedImage bi = new BufferedImage(image.getWidth(null), image.getHeight(null),
-					BufferedImage.TYPE_INT_RGB);
-			Graphics2D graphic = (Graphics2D) bi.createGraphics();
-			graphic.drawImage(image, 0, 0, null);
-			graphic.dispose();
-
-			// close stream
-			File file = new File(barcodeDir + filename + ".png");
-			try (FileOutputStream fos = new FileOutputStream(file)) {
-				ImageIO.write(bi, "png", fos);
-			}
+		return createBarcodeMatrix(type, code).toPng(scaleFactor);
+	}
+
+	/**
+	 * Generate barcode as inline svg.
+	 * 
+	 * @param type
+	 * @param code
+	 * @return
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected String generateBarcodeSVG(BarcodeType type, String code) throws IOException, UnknownBarcodeException {
 
-			return file;
+		return createBarcodeMatrix(type, code).toSvg(barcodeVectorHeightMm);
+	}
+
+	/**
+	 * Read module grid of barcode.
+	 * 
+	 * @param type
+	 * @param code
+	 * @return
+	 * @throws IOException
+	 * @throws UnknownBarcodeException
+	 */
+	protected BarcodeMatrix createBarcodeMatrix(BarcodeType type, String code)
+			throws IOException, UnknownBarcodeException {
+
+		try {
+			return BarcodeMatrix.of(createBarcodeImage(type, code));
 		} catch (NullPointerException | IllegalArgumentException e) {
-			throw new UnknownBarcodeException(sBarcodeType);
+			throw new UnknownBarcodeException(type.name());
 		}
 	}
 
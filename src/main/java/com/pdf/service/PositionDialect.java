@@ -0,0 +1,65 @@
+package com.pdf.service;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.dialect.AbstractProcessorDialect;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.IProcessor;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.standard.StandardDialect;
+import org.thymeleaf.standard.expression.StandardExpressions;
+import org.thymeleaf.templatemode.TemplateMode;
+
+/**
+ * Thymeleaf dialect for templates rendering several positions in one pass.
+ *
+ * {@code pdf:variables="${position}"} makes the entries of a position map
+ * local variables of the element, so the markup of a position uses the same
+ * expressions ({@code ${firstname}}, ...) as a single job:
+ *
+ * <pre>
+ * &lt;div th:each="position, iter : ${positions}" pdf:variables="${position}"
+ *      th:style="${iter.first} ? null : 'page-break-before: always'"&gt;
+ * </pre>
+ *
+ * The attribute is processed after {@code th:each} and {@code th:with}.
+ */
+public class PositionDialect extends AbstractProcessorDialect {
+
+	public static final String PREFIX = "pdf";
+
+	public PositionDialect() {
+		super("Position", PREFIX, StandardDialect.PROCESSOR_PRECEDENCE);
+	}
+
+	@Override
+	public Set<IProcessor> getProcessors(String dialectPrefix) {
+		return Set.of(new VariablesProcessor(dialectPrefix));
+	}
+
+	private static final class VariablesProcessor extends AbstractAttributeTagProcessor {
+
+		/** after th:each (200) and th:with (600) */
+		private static final int PRECEDENCE = 650;
+
+		VariablesProcessor(String dialectPrefix) {
+			super(TemplateMode.HTML, dialectPrefix, null, false, "variables", true, PRECEDENCE, true);
+		}
+
+		@Override
+		protected void doProcess(ITemplateContext context, IProcessableElementTag tag, AttributeName attributeName,
+				String attributeValue, IElementTagStructureHandler structureHandler) {
+			Object value = StandardExpressions.getExpressionParser(context.getConfiguration())
+					.parseExpression(context, attributeValue)
+					.execute(context);
+			if (value instanceof Map) {
+				((Map<?, ?>) value).forEach((name, variable) -> structureHandler.setLocalVariable(name.toString(),
+						variable));
+			}
+		}
+	}
+}
@@ -1,22 +1,38 @@
 package com.pdf.service;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.exception.DeliveryException;
 import com.pdf.exception.MissingMandatoryFieldException;
 import com.pdf.exception.UnknownBarcodeException;
-import com.pdf.service.PdfGenerator.BarcodeType;
+import com.pdf.model.PdfBatchJob;
+import com.pdf.model.PdfBatchJob.Delivery;
+import com.pdf.model.PdfBatchJob.Output;
+import com.pdf.model.PdfJob;
+import com.pdf.service.RenderMetrics.Stage;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -29,6 +45,20 @@ public class Receiver {
 	private HttpRequestService httpRequestService;
 	@Autowired
 	private Sender sender;
+	@Autowired
+	private RenderCapacity renderCapacity;
+	@Autowired
+	private UploadStage uploadStage;
+	@Autowired
+	private DeliveryRetryScheduler retryScheduler;
+	@Autowired
+	private Lanes lanes;
+	@Autowired
+	private TemplateNames templateNames;
+	@Autowired
+	private RenderMetrics metrics;
+	@Autowired
+	private Acknowledgements acknowledgements;
 	
 	protected static final String JMS_LISTENER_ID = "pdf-generator-listener";
 	
@@ -41,89 +71,413 @@ public class Receiver {
 		return latch;
 	}
 
-	@SuppressWarnings("unchecked")
-	@JmsListener(destination = "${activemq.queue.name}", id = JMS_LISTENER_ID)
-	public void receive(String message) {
+	/**
+	 * Listener of the base queue, the default lane. Messages assigned to another
+	 * lane are forwarded to the queue of their lane.
+	 * 
+	 * @param message
+	 * @param jmsMessage
+	 */
+	@JmsListener(destination = "${activemq.queue.name}", id = JMS_LISTENER_ID, concurrency = "${activemq.listener.concurrency:1}")
+	public void receive(@Payload String message, Message jmsMessage) {
+		receive(Lanes.DEFAULT, message, jmsMessage);
+	}
+
+	/**
+	 * Render the pdf on the listener thread and hand it over to the upload stage.
+	 * The message is acknowledged once the upload stage is done with it. Batch
+	 * messages are rendered in one pass and may result in several uploads.
+	 * 
+	 * @param lane
+	 * @param message
+	 * @param jmsMessage
+	 */
+	public void receive(String lane, String message, Message jmsMessage) {
 		
-		log.info("received message='{}'", message);
+		log.info("received message on lane {}='{}'", lane, message);
 		
+		long sentAt = sentAt(jmsMessage);
+		metrics.jobStarted();
+
+		PdfJob job = null;
+		List<RenderedPdf> pdfs = new ArrayList<>();
+		Stage stage = Stage.PARSE;
+		try {
+			// Parse and validate json message
+			Timer.Sample parse = metrics.start();
+			JsonNode tree = mapper.readTree(message);
+
+			String target = lanes.resolve(tree);
+			if (Lanes.DEFAULT.equals(lane) && !Lanes.DEFAULT.equals(target) && forward(target, message, jmsMessage)) {
+				metrics.jobFinished();
+				return;
+			}
+			// the lane is no template variable and no part of the result cache key
+			lanes.strip(tree);
+			metrics.queueWait(lane, sentAt);
+
+			List<Upload> uploads;
+			if (PdfBatchJob.isBatch(tree)) {
+				PdfBatchJob batch = PdfBatchJob.parse(mapper, tree);
+				job = batch.getFirstJob();
+				for (PdfJob position : batch.getJobs()) {
+					templateNames.check(position.getTemplateName());
+				}
+				metrics.stop(parse, Stage.PARSE, job);
+
+				// generate PDFs of all positions
+				stage = Stage.RENDER;
+				renderCapacity.acquire(lane);
+				try {
+					pdfs.addAll(pdfGenerator.generatePdfs(batch));
+				} finally {
+					renderCapacity.release(lane);
+				}
+				uploads = batchUploads(batch, pdfs);
+			} else {
+				job = parseMessage(tree);
+				templateNames.check(job.getTemplateName());
+				metrics.stop(parse, Stage.PARSE, job);
+
+				// generate PDF
+				stage = Stage.RENDER;
+				RenderedPdf pdf;
+				renderCapacity.acquire(lane);
+				try {
+					pdf = pdfGenerator.generatePdf(job);
+				} finally {
+					renderCapacity.release(lane);
+				}
+				pdfs.add(pdf);
+				uploads = List.of(new Upload(job, List.of(pdf), job.getPositionId(), job.getVoucherId(), -1));
+			}
+
+			// pdfs are owned by their uploads from here on
+			pdfs.clear();
+			submit(new MessageDelivery(lane, sentAt, message, jmsMessage, uploads.size()), uploads);
 
+		} catch (InterruptedException e) {
+			// shutting down, message is redelivered as it is not acknowledged
+			pdfs.forEach(this::closeQuietly);
+			metrics.jobFinished();
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			// render failures are deterministic, the message goes to the error queue
+			pdfs.forEach(this::closeQuietly);
+			metrics.error(stage, job, e);
+			metrics.jobFinished();
+			log.error("", e);
+			if (sendToErrorQueue(message, jmsMessage, stage.name().toLowerCase(Locale.ROOT), e, 0)) {
+				acknowledge(jmsMessage);
+			}
+		}
+	}
+
+	/**
+	 * Forward message to the queue of its lane and acknowledge it. Forward and
+	 * acknowledgement are not atomic, the consumer session is not transacted: if
+	 * the acknowledgement is lost the message is redelivered and forwarded again,
+	 * so the lane renders and uploads it twice. The render result cache serves
+	 * the second render.
+	 * 
+	 * @param target
+	 * @param message
+	 * @param jmsMessage
+	 * @return {@code false} if the message could not be forwarded, it is rendered
+	 *         on the default lane then
+	 */
+	private boolean forward(String target, String message, Message jmsMessage) {
 		try {
-			// Validate json message
-			validateMessage(message);
+			sender.forward(target, message, jmsMessage);
+		} catch (JmsException e) {
+			log.warn("Message could not be forwarded to lane {}, rendered on the default lane - {}", target,
+					e.getMessage());
+			return false;
+		}
+		acknowledge(jmsMessage);
+		return true;
+	}
 
-			var javaType = mapper.getTypeFactory().constructMapLikeType(Map.class, String.class, Object.class);
-			var data = (Map<String, Object>) mapper.readValue(message, javaType);
+	/**
+	 * Forward message to the error queue. If the error queue is not reachable the
+	 * message must not be acknowledged: it is redelivered once its consumer is
+	 * closed, at the latest on restart, rather than lost.
+	 * 
+	 * @param message
+	 * @param jmsMessage
+	 * @param failureStage
+	 * @param cause
+	 * @param attempts
+	 * @return {@code false} if the error queue is not reachable
+	 */
+	private boolean sendToErrorQueue(String message, Message jmsMessage, String failureStage, Exception cause,
+			int attempts) {
+		try {
+			sender.sendToErrorQueue(message, jmsMessage, failureStage, cause, attempts);
+			return true;
+		} catch (JmsException e) {
+			log.error("Message could not be sent to the error queue, it is left for redelivery", e);
+			return false;
+		}
+	}
 
-			// generate PDF
-			var pdf = pdfGenerator.generatePdf(data);
+	/**
+	 * Hand uploads over to the upload stage. If submitting fails part way, the
+	 * uploads not submitted are dropped and the message is left unacknowledged
+	 * for redelivery once the submitted uploads are done.
+	 * 
+	 * @param delivery
+	 * @param uploads
+	 */
+	protected void submit(MessageDelivery delivery, List<Upload> uploads) {
+		int submitted = 0;
+		try {
+			for (Upload upload : uploads) {
+				// blocks while the upload stage is saturated
+				uploadStage.submit(() -> deliver(delivery, upload, 1));
+				submitted++;
+			}
+		} catch (InterruptedException e) {
+			abandon(delivery, uploads, submitted);
+			Thread.currentThread().interrupt();
+		} catch (RejectedExecutionException e) {
+			// upload stage shut down, same as interrupted
+			log.warn("Upload stage shut down, message is redelivered");
+			abandon(delivery, uploads, submitted);
+		} catch (RuntimeException e) {
+			log.error("Uploads could not be submitted, message is redelivered", e);
+			abandon(delivery, uploads, submitted);
+		}
+	}
 
+	private void abandon(MessageDelivery delivery, List<Upload> uploads, int submitted) {
+		List<Upload> dropped = uploads.subList(submitted, uploads.size());
+		dropped.forEach(upload -> upload.pdfs.forEach(this::closeQuietly));
+		delivery.abandon(dropped.size());
+	}
+
+	/**
+	 * Uploads of a batch: one request for all pdfs or one request per pdf.
+	 * 
+	 * @param batch
+	 * @param pdfs
+	 * @return
+	 */
+	protected List<Upload> batchUploads(PdfBatchJob batch, List<RenderedPdf> pdfs) {
+		List<PdfJob> jobs = batch.getJobs();
+		if (batch.getOutput() == Output.SPLIT && batch.getDelivery() == Delivery.POSITION) {
+			List<Upload> uploads = new ArrayList<>(jobs.size());
+			for (int i = 0; i < jobs.size(); i++) {
+				PdfJob job = jobs.get(i);
+				uploads.add(new Upload(job, List.of(pdfs.get(i)), job.getPositionId(), job.getVoucherId(), i));
+			}
+			return uploads;
+		}
+		String positionIds = jobs.stream().map(PdfJob::getPositionId).collect(Collectors.joining(","));
+		String voucherIds = jobs.stream().map(PdfJob::getVoucherId).collect(Collectors.joining(","));
+		return List.of(new Upload(batch.getFirstJob(), pdfs, positionIds, voucherIds, -1));
+	}
+
+	/**
+	 * Upload pdfs, runs on the upload stage and - for retries - on the retry
+	 * scheduler. Transient failures are retried with the rendered pdfs, the
+	 * message is acknowledged once all its uploads are delivered or finally
+	 * failed.
+	 * 
+	 * @param delivery
+	 * @param upload
+	 * @param attempt  starting with 1
+	 */
+	protected void deliver(MessageDelivery delivery, Upload upload, int attempt) {
+		PdfJob job = upload.job;
+		Timer.Sample timer = metrics.start();
+		Exception failure = null;
+		try {
 			// send PDF via Http POST
-			var returnUrl = (String) data.get("returnUrl");
 			var multipartMap = new HashMap<String, Object>();
-			multipartMap.put("file", pdf);
-			multipartMap.put("orderId", (String) data.get("orderId"));
-			multipartMap.put("positionId", (String) data.get("positionId"));
-			multipartMap.put("voucherId", (String) data.get("voucherId"));
-			
-			httpRequestService.sendMultipartHttpPost(returnUrl, multipartMap);
-			
-			latch.countDown();
+			multipartMap.put("file", upload.pdfs.size() == 1 ? upload.pdfs.get(0) : upload.pdfs);
+			multipartMap.put("orderId", job.getOrderId());
+			multipartMap.put("positionId", upload.positionId);
+			multipartMap.put("voucherId", upload.voucherId);
 
-		} catch (Exception e) {
-			sender.sendToErrorQueue(message);
+			httpRequestService.sendMultipartHttpPost(job.getReturnUrl(), multipartMap);
+			metrics.stop(timer, Stage.UPLOAD, job);
+			latch.countDown();
+		} catch (DeliveryException | IOException e) {
+			metrics.error(Stage.UPLOAD, job, e);
+			boolean retryable = !(e instanceof DeliveryException) || ((DeliveryException) e).isRetryable();
+			if (retryable && retryScheduler.schedule(attempt, () -> deliver(delivery, upload, attempt + 1))) {
+				log.warn("Delivery failed, retry scheduled - {} - {}", job, e.getMessage());
+				return;
+			}
+			log.error("Delivery failed after " + attempt + " attempts - " + job, e);
+			failure = e;
+		} catch (RuntimeException e) {
+			metrics.error(Stage.UPLOAD, job, e);
 			log.error("", e);
+			failure = e;
+		}
+		upload.pdfs.forEach(this::closeQuietly);
+		delivery.uploadDone(upload, failure, attempt);
+	}
+
+	private long sentAt(Message jmsMessage) {
+		try {
+			return Sender.originalTimestamp(jmsMessage);
+		} catch (JMSException e) {
+			return 0;
+		}
+	}
+
+	private void acknowledge(Message jmsMessage) {
+		try {
+			jmsMessage.acknowledge();
+		} catch (JMSException e) {
+			log.error("Message could not be acknowledged", e);
+		}
+	}
+
+	private void closeQuietly(RenderedPdf pdf) {
+		if (pdf != null) {
+			try {
+				pdf.close();
+			} catch (IOException e) {
+				log.error("", e);
+			}
 		}
 	}
 
 	/**
-	 * Validate Json Message
+	 * Parse and validate Json Message
 	 * 
 	 * @param message
+	 * @return
 	 * @throws IOException
-	 * @throws JsonMappingException
-	 * @throws JsonParseException
 	 * @throws MissingMandatoryFieldException
 	 * @throws UnknownBarcodeException
 	 */
-	@SuppressWarnings("unchecked")
-	protected void validateMessage(String message) throws JsonParseException, JsonMappingException, IOException,
-			MissingMandatoryFieldException, UnknownBarcodeException {
-
-		var javaType = mapper.getTypeFactory().constructMapLikeType(Map.class, String.class, Object.class);
-		var data = (Map<String, Object>) mapper.readValue(message, javaType);
-
-		// validate Meta
-		var templateName = (String) data.get("templateName");
-		var language = (String) data.get("language");
-		var filename = (String) data.get("filename");
-		var returnUrl = (String) data.get("returnUrl");
-
-		if (StringUtils.isBlank(templateName) || StringUtils.isBlank(language) || StringUtils.isBlank(filename)
-				|| StringUtils.isBlank(returnUrl)) {
-			throw new MissingMandatoryFieldException("templateName | language | filename | returnUrl", message);
+	protected PdfJob parseMessage(JsonNode message)
+			throws IOException, MissingMandatoryFieldException, UnknownBarcodeException {
+		return PdfJob.parse(mapper, message);
+	}
+
+	/**
+	 * One upload request: a single pdf or all pdfs of a batch.
+	 */
+	protected static final class Upload {
+
+		private final PdfJob job;
+		private final List<RenderedPdf> pdfs;
+		private final String positionId;
+		private final String voucherId;
+		/** index of the position in the batch message, -1 if not a single position */
+		private final int position;
+
+		Upload(PdfJob job, List<RenderedPdf> pdfs, String positionId, String voucherId, int position) {
+			this.job = job;
+			this.pdfs = pdfs;
+			this.positionId = positionId;
+			this.voucherId = voucherId;
+			this.position = position;
 		}
+	}
 
-		// validate Barcode
-		var barcodeType = (String) data.get("barcodeType");
-		var barcode = (String) data.get("barcode");
+	/**
+	 * Outstanding uploads of one message. The last upload acknowledges the
+	 * message, after forwarding it to the error queue if any upload failed. Job
+	 * and acknowledgement counts are released in any case. The acknowledgement is
+	 * sent by the listener thread that received the message, on its own session.
+	 * 
+	 * If positions of a batch are uploaded one by one, only the failed positions
+	 * are forwarded, so the delivered ones are not delivered again on replay.
+	 */
+	protected final class MessageDelivery {
 
-		if (StringUtils.isNotBlank(barcodeType) && StringUtils.isNotBlank(barcode)) {
-			try {
-				BarcodeType.valueOf(barcodeType);
-			} catch (Exception e) {
-				throw new UnknownBarcodeException(barcodeType);
-			}
+		private final String lane;
+		private final long sentAt;
+		private final String message;
+		private final Message jmsMessage;
+		/** listener thread owning the session of the message */
+		private final Thread listener;
+		private final AtomicInteger pending;
+		private volatile Exception failure;
+		private volatile int failedAttempts;
+		private volatile boolean abandoned;
+		private final Set<Integer> failedPositions = ConcurrentHashMap.newKeySet();
+
+		MessageDelivery(String lane, long sentAt, String message, Message jmsMessage, int uploads) {
+			this.lane = lane;
+			this.sentAt = sentAt;
+			this.message = message;
+			this.jmsMessage = jmsMessage;
+			this.listener = Thread.currentThread();
+			this.pending = new AtomicInteger(uploads);
+			acknowledgements.handedOver();
 		}
 
+		/**
+		 * Uploads were dropped, the message is left for redelivery.
+		 * 
+		 * @param uploads number of dropped uploads
+		 */
+		void abandon(int uploads) {
+			abandoned = true;
+			if (pending.addAndGet(-uploads) == 0) {
+				metrics.jobFinished();
+				acknowledgements.released();
+			}
+		}
 
-		// validate order infos
-		var orderId = (String) data.get("orderId");
-		var positionId = (String) data.get("positionId");
-		var voucherId = (String) data.get("voucherId");
+		void uploadDone(Upload upload, Exception uploadFailure, int attempts) {
+			if (uploadFailure != null) {
+				if (upload.position >= 0) {
+					failedPositions.add(upload.position);
+				}
+				failure = uploadFailure;
+				failedAttempts = attempts;
+			}
+			if (pending.decrementAndGet() > 0) {
+				return;
+			}
+			if (abandoned) {
+				metrics.jobFinished();
+				acknowledgements.released();
+				return;
+			}
+			boolean acknowledge = false;
+			try {
+				if (failure != null) {
+					acknowledge = sendToErrorQueue(failedMessage(), jmsMessage, "delivery", failure, failedAttempts);
+				} else {
+					metrics.latency(lane, sentAt);
+					acknowledge = true;
+				}
+			} finally {
+				metrics.jobFinished();
+				if (acknowledge) {
+					acknowledgements.acknowledgeLater(listener, jmsMessage);
+				} else {
+					acknowledgements.released();
+				}
+			}
+		}
 
-		if (StringUtils.isBlank(orderId) || StringUtils.isBlank(positionId) || StringUtils.isBlank(voucherId)) {
-			throw new MissingMandatoryFieldException("orderId | positionId | voucherId", message);
+		/**
+		 * Message to forward to the error queue: the batch reduced to its failed
+		 * positions, else the whole message.
+		 * 
+		 * @return
+		 */
+		private String failedMessage() {
+			if (failedPositions.isEmpty()) {
+				return message;
+			}
+			try {
+				return PdfBatchJob.retainPositions(mapper, mapper.readTree(message), failedPositions);
+			} catch (IOException e) {
+				log.error("Failed positions could not be extracted, whole batch goes to the error queue", e);
+				return message;
+			}
 		}
 	}
 	
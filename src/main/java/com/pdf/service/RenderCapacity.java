@@ -0,0 +1,222 @@
+package com.pdf.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Number of renders running at the same time, shared by the JMS listeners and
+ * the synchronous http endpoint.
+ *
+ * Listeners wait for a free slot, which pauses consumption. Http requests take
+ * one of the {@code render.http.capacity} slots reserved for them, else a slot
+ * of the default lane if one gets free within
+ * {@code render.http.admission-timeout-ms}. The reserved slots keep http
+ * requests from starving behind listeners queued on the fair default lane.
+ *
+ * Every priority lane of {@link Lanes} has its own slots, taken from
+ * {@code render.capacity}, so heavy renders of the default lane never block it.
+ *
+ * The slots of the default lane can be limited at runtime, see
+ * {@link ListenerConcurrencyManager}: running renders finish, new ones wait.
+ */
+@Log4j2
+@Component
+public class RenderCapacity implements MeterBinder {
+
+	@Value("${render.capacity:0}")
+	private int capacity;
+	@Value("${render.http.capacity:1}")
+	private int httpCapacity;
+	@Value("${render.http.admission-timeout-ms:0}")
+	private long admissionTimeout;
+
+	@Autowired
+	private Lanes lanes;
+
+	/** permits per lane, including the default lane */
+	private final Map<String, Slots> permits = new LinkedHashMap<>();
+	private final Map<String, Integer> capacities = new LinkedHashMap<>();
+	/** usable slots of the default lane */
+	private int limit;
+	private Counter rejected;
+
+	@PostConstruct
+	public void init() {
+		if (capacity <= 0) {
+			capacity = Runtime.getRuntime().availableProcessors();
+		}
+		int reserved = 0;
+		for (String lane : lanes.getNames()) {
+			int laneCapacity = Math.max(1, lanes.getRenderCapacity(lane));
+			capacities.put(lane, laneCapacity);
+			reserved += laneCapacity;
+		}
+		if (httpCapacity > 0) {
+			capacities.put(Lanes.HTTP, httpCapacity);
+			reserved += httpCapacity;
+		}
+		if (reserved >= capacity) {
+			log.warn("Lanes reserve {} of {} render slots, the default lane gets 1 slot beyond render.capacity",
+					reserved, capacity);
+		}
+		capacities.put(Lanes.DEFAULT, Math.max(1, capacity - reserved));
+		capacities.forEach((lane, laneCapacity) -> permits.put(lane, new Slots(laneCapacity)));
+		limit = capacities.get(Lanes.DEFAULT);
+		log.info("Render capacity - {}", capacities);
+	}
+
+	/**
+	 * Wait for a free render slot of the default lane.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void acquire() throws InterruptedException {
+		acquire(Lanes.DEFAULT);
+	}
+
+	/**
+	 * Wait for a free render slot of lane.
+	 *
+	 * @param lane
+	 * @throws InterruptedException
+	 */
+	public void acquire(String lane) throws InterruptedException {
+		permits(lane).acquire();
+	}
+
+	/**
+	 * Take a render slot for a http request: a free reserved http slot, else a
+	 * slot of the default lane if one gets free within the admission timeout.
+	 *
+	 * @return lane of the slot to release, {@code null} if capacity is exhausted
+	 * @throws InterruptedException
+	 */
+	public String tryAcquire() throws InterruptedException {
+		Slots http = permits.get(Lanes.HTTP);
+		if (http != null && http.tryAcquire()) {
+			return Lanes.HTTP;
+		}
+		if (permits(Lanes.DEFAULT).tryAcquire(admissionTimeout, TimeUnit.MILLISECONDS)) {
+			return Lanes.DEFAULT;
+		}
+		if (rejected != null) {
+			rejected.increment();
+		}
+		return null;
+	}
+
+	public void release() {
+		release(Lanes.DEFAULT);
+	}
+
+	public void release(String lane) {
+		permits(lane).release();
+	}
+
+	/**
+	 * Render slots of all lanes.
+	 *
+	 * @return
+	 */
+	public int getCapacity() {
+		return capacities.values().stream().mapToInt(Integer::intValue).sum();
+	}
+
+	public int getCapacity(String lane) {
+		return capacities.getOrDefault(lane, capacities.get(Lanes.DEFAULT));
+	}
+
+	/**
+	 * Limit the usable slots of the default lane, between 1 and its capacity.
+	 * Never blocks: renders above the limit finish, new ones wait.
+	 *
+	 * @param newLimit
+	 */
+	public synchronized void setLimit(int newLimit) {
+		int bounded = Math.max(1, Math.min(capacities.get(Lanes.DEFAULT), newLimit));
+		Slots slots = permits.get(Lanes.DEFAULT);
+		if (bounded > limit) {
+			slots.release(bounded - limit);
+		} else if (bounded < limit) {
+			slots.reduce(limit - bounded);
+		}
+		limit = bounded;
+	}
+
+	/**
+	 * Usable slots of the default lane.
+	 *
+	 * @return
+	 */
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Number of renders waiting for a slot of lane.
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public int getWaiting(String lane) {
+		return permits(lane).getQueueLength();
+	}
+
+	/**
+	 * Number of renders running in lane.
+	 *
+	 * @param lane
+	 * @return
+	 */
+	public int getInUse(String lane) {
+		int usable = Lanes.DEFAULT.equals(lane) || !capacities.containsKey(lane) ? getLimit() : getCapacity(lane);
+		return usable - permits(lane).availablePermits();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (String lane : capacities.keySet()) {
+			Gauge.builder("pdf.render.capacity.in.use", this, capacity -> capacity.getInUse(lane))
+					.tag("lane", lane).register(registry);
+			Gauge.builder("pdf.render.capacity.max", this, capacity -> capacity.getCapacity(lane))
+					.tag("lane", lane).register(registry);
+		}
+		Gauge.builder("pdf.render.capacity.limit", this, RenderCapacity::getLimit)
+				.tag("lane", Lanes.DEFAULT).register(registry);
+		rejected = Counter.builder("pdf.render.rejected").register(registry);
+	}
+
+	private Slots permits(String lane) {
+		return permits.getOrDefault(lane, permits.get(Lanes.DEFAULT));
+	}
+
+	/**
+	 * Fair semaphore whose permits can be reduced without waiting.
+	 */
+	private static final class Slots extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		Slots(int permits) {
+			super(permits, true);
+		}
+
+		void reduce(int reduction) {
+			reducePermits(reduction);
+		}
+	}
+}
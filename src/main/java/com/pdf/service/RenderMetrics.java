@@ -0,0 +1,197 @@
+package com.pdf.service;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.springframework.stereotype.Component;
+
+import com.pdf.model.PdfJob;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters of the render pipeline.
+ *
+ * <ul>
+ * <li>{@code pdf.render.stage} - timer with histogram per stage, template and
+ * barcode type</li>
+ * <li>{@code pdf.render.errors} - counter per stage, template and exception</li>
+ * <li>{@code pdf.render.output} - distribution of pdf sizes in bytes per
+ * template and output profile</li>
+ * <li>{@code pdf.render.profile} - render duration per template and output
+ * profile</li>
+ * <li>{@code pdf.render.image.bytes.saved} - bytes saved by image
+ * downsampling</li>
+ * <li>{@code pdf.jobs.in.flight} - jobs received but not yet delivered</li>
+ * <li>{@code pdf.lane.queue.wait} - time messages waited in the queue per
+ * lane</li>
+ * <li>{@code pdf.lane.latency} - time from sending a message until its pdf was
+ * delivered per lane</li>
+ * </ul>
+ *
+ * Templates are tagged by name only if they exist in the template folder,
+ * other names are tagged {@code unknown} to keep the number of meters bounded.
+ */
+@Component
+public class RenderMetrics {
+
+	public enum Stage {
+		PARSE,
+		BARCODE,
+		STATIC_CONTENT,
+		REMOTE_RESOURCES,
+		THYMELEAF,
+		FONT_PROVIDER,
+		HTML2PDF,
+		OVERLAY,
+		RENDER,
+		UPLOAD
+	}
+
+	private static final String UNKNOWN = "unknown";
+	private static final String NONE = "none";
+
+	private final MeterRegistry registry;
+	private final InFlightTracker inFlight;
+	private final TemplateNames templateNames;
+
+	public RenderMetrics(MeterRegistry registry, InFlightTracker inFlight, TemplateNames templateNames) {
+		this.registry = registry;
+		this.inFlight = inFlight;
+		this.templateNames = templateNames;
+		registry.gauge("pdf.jobs.in.flight", inFlight, InFlightTracker::getInFlight);
+	}
+
+	public Timer.Sample start() {
+		return Timer.start(registry);
+	}
+
+	/**
+	 * Record duration of stage.
+	 * 
+	 * @param sample
+	 * @param stage
+	 * @param job    {@code null} if the job is not known (yet)
+	 */
+	public void stop(Timer.Sample sample, Stage stage, PdfJob job) {
+		sample.stop(Timer.builder("pdf.render.stage")
+				.tags(tags(stage, job))
+				.publishPercentileHistogram()
+				.register(registry));
+	}
+
+	/**
+	 * Count failed stage.
+	 * 
+	 * @param stage
+	 * @param job   {@code null} if the job is not known (yet)
+	 * @param e
+	 */
+	public void error(Stage stage, PdfJob job, Exception e) {
+		registry.counter("pdf.render.errors", tags(stage, job).and("exception", e.getClass().getSimpleName()))
+				.increment();
+	}
+
+	/**
+	 * Record size of generated pdf.
+	 * 
+	 * @param job
+	 * @param profile
+	 * @param pdf
+	 * @param cached {@code true} if delivered from the render result cache
+	 */
+	public void output(PdfJob job, OutputProfile profile, RenderedPdf pdf, boolean cached) {
+		DistributionSummary.builder("pdf.render.output")
+				.baseUnit("bytes")
+				.tags("template", template(job), "profile", profile.getName(), "cached", Boolean.toString(cached))
+				.publishPercentileHistogram()
+				.register(registry)
+				.record(pdf.getSize());
+	}
+
+	/**
+	 * Record render duration by output profile.
+	 * 
+	 * @param sample
+	 * @param job
+	 * @param profile
+	 */
+	public void profile(Timer.Sample sample, PdfJob job, OutputProfile profile) {
+		sample.stop(Timer.builder("pdf.render.profile")
+				.tags("template", template(job), "profile", profile.getName())
+				.register(registry));
+	}
+
+	/**
+	 * Count bytes saved by downsampling images.
+	 * 
+	 * @param job
+	 * @param profile
+	 * @param bytes
+	 */
+	public void imageBytesSaved(PdfJob job, OutputProfile profile, long bytes) {
+		registry.counter("pdf.render.image.bytes.saved", "template", template(job), "profile",
+				profile.getName()).increment(bytes);
+	}
+
+	/**
+	 * Record time a message waited in the queue of its lane.
+	 * 
+	 * @param lane
+	 * @param sentMillis time the message was sent, ignored if unknown
+	 */
+	public void queueWait(String lane, long sentMillis) {
+		laneTimer("pdf.lane.queue.wait", lane, sentMillis);
+	}
+
+	/**
+	 * Record time from sending a message until it was delivered.
+	 * 
+	 * @param lane
+	 * @param sentMillis time the message was sent, ignored if unknown
+	 */
+	public void latency(String lane, long sentMillis) {
+		laneTimer("pdf.lane.latency", lane, sentMillis);
+	}
+
+	public void jobStarted() {
+		inFlight.started();
+	}
+
+	public void jobFinished() {
+		inFlight.finished();
+	}
+
+	private void laneTimer(String name, String lane, long sentMillis) {
+		if (sentMillis <= 0) {
+			return;
+		}
+		Timer.builder(name)
+				.tag("lane", lane)
+				.publishPercentileHistogram()
+				.register(registry)
+				.record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - sentMillis)));
+	}
+
+	/**
+	 * Template name as tag, {@code unknown} if the template does not exist.
+	 * 
+	 * @param job
+	 * @return
+	 */
+	private String template(PdfJob job) {
+		String name = job == null ? null : job.getTemplateName();
+		return templateNames.exists(name) ? name : UNKNOWN;
+	}
+
+	private Tags tags(Stage stage, PdfJob job) {
+		String template = template(job);
+		String barcodeType = job == null ? UNKNOWN
+				: job.getBarcodeType() == null ? NONE : job.getBarcodeType().name();
+		return Tags.of("stage", stage.name().toLowerCase(Locale.ROOT), "template", template, "barcodeType",
+				barcodeType);
+	}
+}
@@ -0,0 +1,102 @@
+package com.pdf.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+/**
+ * Generated pdf, held in memory or - above the configured threshold - in a
+ * spill file that is deleted on {@link #close()}.
+ */
+public class RenderedPdf implements Closeable {
+
+	private final String filename;
+	private final byte[] data;
+	private final File file;
+
+	/**
+	 * Take over content of a closed DeferredFileOutputStream.
+	 * 
+	 * @param filename
+	 * @param os
+	 */
+	public RenderedPdf(String filename, DeferredFileOutputStream os) {
+		this.filename = filename;
+		this.data = os.isInMemory() ? os.getData() : null;
+		this.file = os.isInMemory() ? null : os.getFile();
+	}
+
+	/**
+	 * In-memory pdf.
+	 * 
+	 * @param filename
+	 * @param data
+	 */
+	public RenderedPdf(String filename, byte[] data) {
+		this.filename = filename;
+		this.data = data;
+		this.file = null;
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public boolean isInMemory() {
+		return data != null;
+	}
+
+	/**
+	 * @return pdf bytes, {@code null} if spilled to disk
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return spill file, {@code null} if held in memory
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	public long getSize() {
+		return data != null ? data.length : file.length();
+	}
+
+	public InputStream openStream() throws IOException {
+		return data != null ? new ByteArrayInputStream(data) : Files.newInputStream(file.toPath());
+	}
+
+	/**
+	 * Copy pdf to target file.
+	 * 
+	 * @param target
+	 * @throws IOException
+	 */
+	public void writeTo(File target) throws IOException {
+		if (data != null) {
+			Files.write(target.toPath(), data);
+		} else {
+			Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (file != null) {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return filename + " (" + getSize() + " bytes" + (isInMemory() ? "" : ", spilled to " + file) + ")";
+	}
+}
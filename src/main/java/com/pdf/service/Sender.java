@@ -1,5 +1,9 @@
 package com.pdf.service;
 
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
 import javax.jms.TextMessage;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,14 +11,24 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
 @Service
 public class Sender {
 
+	/** JMSTimestamp of the message as first received, kept when forwarded */
+	public static final String ORIGINAL_TIMESTAMP = "originalTimestamp";
+
 	@Autowired
 	private JmsTemplate jmsTemplate;
+	@Autowired
+	private Lanes lanes;
+	@Autowired
+	private ObjectMapper mapper;
 
 	@Value("${activemq.queue.name}")
 	private String queue;
@@ -22,17 +36,84 @@ public class Sender {
 	@Value("${activemq.queue.error}")
 	private String errorQueue;
 
+	/**
+	 * Send message to the queue of its lane.
+	 * 
+	 * @param message
+	 */
 	public void send(String message) {
-		log.info("sending message='{}'", message);
-		jmsTemplate.convertAndSend(queue, message);
+		String lane = Lanes.DEFAULT;
+		try {
+			lane = lanes.resolve(mapper.readTree(message));
+		} catch (JsonProcessingException e) {
+			// invalid messages are rejected by the receiver
+		}
+		log.info("sending message to lane {}='{}'", lane, message);
+		jmsTemplate.convertAndSend(lanes.queue(lane), message);
+	}
+
+	/**
+	 * Forward message received on the base queue to the queue of its lane. The
+	 * correlation id and the original timestamp are kept.
+	 * 
+	 * @param lane
+	 * @param message
+	 * @param original
+	 */
+	public void forward(String lane, String message, Message original) {
+		log.info("forwarding message to lane {}='{}'", lane, message);
+		jmsTemplate.send(lanes.queue(lane), messageCreator -> {
+			TextMessage msg = messageCreator.createTextMessage(message);
+			msg.setJMSCorrelationID(original.getJMSCorrelationID() != null ? original.getJMSCorrelationID()
+					: original.getJMSMessageID());
+			msg.setLongProperty(ORIGINAL_TIMESTAMP, originalTimestamp(original));
+			return msg;
+		});
+	}
+
+	/**
+	 * Time the message was first sent.
+	 * 
+	 * @param message
+	 * @return millis, 0 if unknown
+	 * @throws JMSException
+	 */
+	public static long originalTimestamp(Message message) throws JMSException {
+		return message.propertyExists(ORIGINAL_TIMESTAMP) ? message.getLongProperty(ORIGINAL_TIMESTAMP)
+				: message.getJMSTimestamp();
 	}
 
-	public void sendToErrorQueue(String message) {
-		log.info("sending message='{}'", message);
+	/**
+	 * Send original message to the error queue. The correlation id of the
+	 * original message - or its message id - is kept, the failure is described by
+	 * message properties.
+	 * 
+	 * @param message      original payload
+	 * @param original     original JMS message, may be {@code null}
+	 * @param failureStage parse, render or delivery
+	 * @param cause
+	 * @param attempts     number of delivery attempts
+	 */
+	public void sendToErrorQueue(String message, Message original, String failureStage, Exception cause,
+			int attempts) {
+		log.info("sending message to error queue='{}'", message);
 		jmsTemplate.send(errorQueue, messageCreator -> {
-			TextMessage msg = messageCreator.createTextMessage("Accepted");
-			msg.setJMSCorrelationID("123456");
+			TextMessage msg = messageCreator.createTextMessage(message);
+			if (original != null) {
+				msg.setJMSCorrelationID(original.getJMSCorrelationID() != null ? original.getJMSCorrelationID()
+						: original.getJMSMessageID());
+			}
+			msg.setStringProperty("failureStage", failureStage);
+			msg.setStringProperty("failureException", cause.getClass().getName());
+			msg.setStringProperty("failureReason", String.valueOf(cause.getMessage()));
+			msg.setIntProperty("deliveryAttempts", attempts);
+			msg.setStringProperty("originalQueue", originalQueue(original));
 			return msg;
 		});
 	}
+
+	private String originalQueue(Message original) throws JMSException {
+		Destination destination = original == null ? null : original.getJMSDestination();
+		return destination instanceof Queue ? ((Queue) destination).getQueueName() : queue;
+	}
 }
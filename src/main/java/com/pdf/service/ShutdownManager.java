@@ -1,46 +1,131 @@
 package com.pdf.service;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jms.config.JmsListenerEndpointRegistry;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * Graceful shutdown, triggered by a file in the shutdown directory or by the
+ * {@code drain} actuator endpoint.
+ *
+ * The JMS listeners stop receiving but keep their sessions open until the
+ * deferred acknowledgements are sent; the application exits as soon as all
+ * jobs in flight are delivered and acknowledged, at the latest after
+ * {@code shutdown.drain-timeout-ms}. Unacknowledged messages are redelivered to
+ * other instances.
+ *
+ * The shutdown directory is watched; polling every
+ * {@code shutdown.poll-interval-ms} covers file systems without change
+ * notification.
+ */
 @Log4j2
 @Component
 public class ShutdownManager {
 
 	@Autowired
 	private ApplicationContext appContext;
-	
+	@Autowired
+	private InFlightTracker inFlightTracker;
+	@Autowired
+	private Acknowledgements acknowledgements;
+
 	@Value("${directory.shutdown}")
 	private String shutdownDir;
-	
-	@Scheduled(fixedDelay = 60 * 1000)
-	protected void checkShutdownDir() throws InterruptedException {
-		
+	@Value("${shutdown.drain-timeout-ms:60000}")
+	private long drainTimeout;
+
+	private final AtomicBoolean shuttingDown = new AtomicBoolean();
+
+	private WatchService watchService;
+	private Thread watcherThread;
+
+	@EventListener
+	public synchronized void onApplicationEvent(ContextRefreshedEvent event) {
+		if (watchService != null) {
+			return;
+		}
+
+		File dir = new File(shutdownDir);
+		if (!dir.exists()) {
+			dir.mkdir();
+		}
+
+		try {
+			Path path = dir.toPath().toAbsolutePath();
+			watchService = path.getFileSystem().newWatchService();
+			path.register(watchService, ENTRY_CREATE);
+		} catch (IOException e) {
+			log.warn("Shutdown directory could not be watched, polling only - {}", e.getMessage());
+			return;
+		}
+
+		watcherThread = new Thread(this::processEvents, "shutdown-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	@PreDestroy
+	public synchronized void stop() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+			watcherThread.interrupt();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${shutdown.poll-interval-ms:60000}")
+	protected void checkShutdownDir() {
+
 		File dir = new File(shutdownDir);
 		if(!dir.exists()) {
 			dir.mkdir();
 		}
-		
-		if(dir.listFiles().length > 0) {
-			log.info("shutdown application ...");
-			stopJMSListener();
-			
-			Thread.sleep(20 * 1000);
-			
-			SpringApplication.exit(appContext, () -> 0);
-			System.exit(0);
+
+		File[] files = dir.listFiles();
+		if(files != null && files.length > 0) {
+			shutdown("shutdown file");
+		}
+	}
+
+	/**
+	 * Start graceful shutdown in the background, subsequent calls are ignored.
+	 *
+	 * @param trigger
+	 * @return {@code false} if shutdown is already in progress
+	 */
+	public boolean shutdown(String trigger) {
+		if (!shuttingDown.compareAndSet(false, true)) {
+			return false;
 		}
+		log.info("shutdown application ({}) ...", trigger);
+		Thread thread = new Thread(this::drainAndExit, "shutdown");
+		thread.start();
+		return true;
 	}
-	
+
+	public boolean isShuttingDown() {
+		return shuttingDown.get();
+	}
+
 	public void stopJMSListener() {
 		// https://stackoverflow.com/questions/37077787/safely-terminating-a-spring-jms-application
 		// https://stackoverflow.com/questions/32588352/how-can-i-stop-start-pause-a-jmslistener-the-clean-way
@@ -48,4 +133,46 @@ public class ShutdownManager {
 		customRegistry.stop();
 	}
 
+	private void drainAndExit() {
+		// listeners stop receiving, see AcknowledgingListenerContainer
+		inFlightTracker.startDraining();
+
+		try {
+			long start = System.currentTimeMillis();
+			if (inFlightTracker.awaitDrained(drainTimeout) && acknowledgements
+					.awaitAcknowledged(Math.max(0, drainTimeout - (System.currentTimeMillis() - start)))) {
+				log.info("Jobs drained in {} ms", System.currentTimeMillis() - start);
+			} else {
+				log.warn("Drain timeout, {} jobs still in flight, {} acknowledgements pending",
+						inFlightTracker.getInFlight(), acknowledgements.getPending());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		stopJMSListener();
+
+		SpringApplication.exit(appContext, () -> 0);
+		System.exit(0);
+	}
+
+	private void processEvents() {
+		while (!Thread.currentThread().isInterrupted()) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			boolean created = !key.pollEvents().isEmpty();
+			if (!key.reset()) {
+				return;
+			}
+			if (created) {
+				shutdown("shutdown file");
+				return;
+			}
+		}
+	}
+
 }
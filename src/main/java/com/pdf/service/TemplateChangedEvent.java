@@ -0,0 +1,35 @@
+package com.pdf.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when files below a template folder were created, modified or
+ * deleted.
+ */
+public class TemplateChangedEvent extends ApplicationEvent {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final String templateName;
+
+	/**
+	 * @param source
+	 * @param templateName name of the changed template, {@code null} if any
+	 *                     template may have changed
+	 */
+	public TemplateChangedEvent(Object source, String templateName) {
+		super(source);
+		this.templateName = templateName;
+	}
+
+	public String getTemplateName() {
+		return templateName;
+	}
+
+	public boolean affects(String name) {
+		return templateName == null || templateName.equals(name);
+	}
+}
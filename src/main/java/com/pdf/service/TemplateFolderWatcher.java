@@ -0,0 +1,151 @@
+package com.pdf.service;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Watches the template folder recursively and publishes a
+ * {@link TemplateChangedEvent} per changed template.
+ */
+@Log4j2
+@Component
+public class TemplateFolderWatcher {
+
+	@Value("${template-folder}")
+	private String templateFolder;
+
+	@Value("${template-watcher.enabled:true}")
+	private boolean enabled;
+
+	@Autowired
+	private ApplicationEventPublisher publisher;
+
+	private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+	private Path root;
+	private WatchService watchService;
+	private Thread watcherThread;
+
+	@EventListener
+	public synchronized void onApplicationEvent(ContextRefreshedEvent event) {
+		if (!enabled || watchService != null) {
+			return;
+		}
+
+		root = Paths.get(templateFolder).toAbsolutePath();
+		if (!Files.isDirectory(root)) {
+			log.warn("Template folder does not exist, changes are not watched - {}", root);
+			return;
+		}
+
+		try {
+			watchService = root.getFileSystem().newWatchService();
+			registerAll(root);
+		} catch (IOException e) {
+			log.error("Template folder could not be watched - " + root, e);
+			return;
+		}
+
+		watcherThread = new Thread(this::processEvents, "template-folder-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+		log.info("Watching template folder - {}", root);
+	}
+
+	@PreDestroy
+	public synchronized void stop() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+			watcherThread.interrupt();
+		}
+	}
+
+	private void processEvents() {
+		while (!Thread.currentThread().isInterrupted()) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			Path dir = watchedDirs.get(key);
+			Set<String> changedTemplates = new HashSet<>();
+			boolean overflow = false;
+
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == OVERFLOW || dir == null) {
+					overflow = true;
+					continue;
+				}
+
+				Path child = dir.resolve((Path) event.context());
+				if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+					try {
+						registerAll(child);
+					} catch (IOException e) {
+						log.error("Directory could not be watched - " + child, e);
+					}
+				}
+
+				Path relative = root.relativize(child);
+				if (relative.getNameCount() > 0) {
+					changedTemplates.add(relative.getName(0).toString());
+				}
+			}
+
+			if (!key.reset()) {
+				watchedDirs.remove(key);
+			}
+
+			if (overflow) {
+				log.info("Template folder changed");
+				publisher.publishEvent(new TemplateChangedEvent(this, null));
+			} else {
+				for (String templateName : changedTemplates) {
+					log.info("Template changed - {}", templateName);
+					publisher.publishEvent(new TemplateChangedEvent(this, templateName));
+				}
+			}
+		}
+	}
+
+	private void registerAll(Path start) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,69 @@
+package com.pdf.service;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.pdf.exception.UnknownTemplateException;
+
+/**
+ * Validation of template names taken from messages and requests.
+ *
+ * Template names are used in file paths and as cache keys, so a name is only
+ * accepted if it is a single path segment naming an existing template below
+ * {@code template-folder}. Jobs must be checked before any template lookup.
+ * Existing names are remembered until their template changed, bogus names are
+ * never stored.
+ */
+@Component
+public class TemplateNames {
+
+	@Value("${template-folder}")
+	private String templateFolder;
+
+	private final Set<String> known = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Is name a single path segment naming an existing template.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public boolean exists(String name) {
+		if (name == null || name.isBlank() || name.startsWith(".") || name.contains("/") || name.contains("\\")
+				|| name.indexOf('\0') >= 0) {
+			return false;
+		}
+		if (known.contains(name)) {
+			return true;
+		}
+		File folder = new File(templateFolder + name);
+		if (folder.isDirectory() && (new File(folder, "template.html").isFile()
+				|| new File(folder, "template.properties").isFile())) {
+			known.add(name);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check that template exists.
+	 *
+	 * @param name
+	 * @throws UnknownTemplateException
+	 */
+	public void check(String name) throws UnknownTemplateException {
+		if (!exists(name)) {
+			throw new UnknownTemplateException(name);
+		}
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		known.removeIf(event::affects);
+	}
+}
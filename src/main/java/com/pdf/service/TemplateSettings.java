@@ -0,0 +1,97 @@
+package com.pdf.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Optional per-template settings read from
+ * {@code <template-folder>/<templateName>/template.properties}.
+ *
+ * Settings are cached and reloaded after the template folder changed. Unknown
+ * template names have no settings and are not cached.
+ */
+@Log4j2
+@Component
+public class TemplateSettings {
+
+	@Value("${template-folder}")
+	private String templateFolder;
+
+	@Autowired
+	private TemplateNames templateNames;
+
+	private final Map<String, Properties> settings = new ConcurrentHashMap<>();
+
+	/**
+	 * Get setting of template.
+	 * 
+	 * @param templateName
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public String get(String templateName, String key, String defaultValue) {
+		String value = properties(templateName).getProperty(key);
+		return StringUtils.isBlank(value) ? defaultValue : value.trim();
+	}
+
+	/**
+	 * Get all settings of template starting with prefix, keyed by the remainder of
+	 * the key.
+	 * 
+	 * @param templateName
+	 * @param prefix
+	 * @return
+	 */
+	public Map<String, String> getAll(String templateName, String prefix) {
+		Map<String, String> values = new TreeMap<>();
+		properties(templateName).forEach((key, value) -> {
+			String name = key.toString();
+			if (name.startsWith(prefix) && StringUtils.isNotBlank(value.toString())) {
+				values.put(name.substring(prefix.length()), value.toString().trim());
+			}
+		});
+		return values;
+	}
+
+	@EventListener
+	public void onTemplateChanged(TemplateChangedEvent event) {
+		settings.keySet().removeIf(event::affects);
+	}
+
+	private Properties properties(String templateName) {
+		if (!templateNames.exists(templateName)) {
+			return new Properties();
+		}
+		return settings.computeIfAbsent(templateName, this::load);
+	}
+
+	private Properties load(String templateName) {
+		Properties properties = new Properties();
+		File file = new File(templateFolder + templateName + "/template.properties");
+		if (file.isFile()) {
+			log.info("Load template settings - {}", file.getPath());
+			try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			} catch (IOException e) {
+				log.error("Template settings could not be loaded - " + file, e);
+			}
+		}
+		return properties;
+	}
+}
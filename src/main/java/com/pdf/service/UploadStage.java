@@ -0,0 +1,98 @@
+package com.pdf.service;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * I/O bound upload stage behind the rendering listener threads.
+ *
+ * At most {@code pipeline.upload.capacity} uploads are queued or running.
+ * When the stage is saturated {@link #submit(Runnable)} blocks the calling
+ * listener thread, which pauses consumption until receivers catch up.
+ */
+@Log4j2
+@Component
+public class UploadStage implements MeterBinder {
+
+	@Value("${pipeline.upload.threads:8}")
+	private int threads;
+	@Value("${pipeline.upload.capacity:32}")
+	private int capacity;
+
+	private ThreadPoolExecutor executor;
+	private Semaphore permits;
+
+	@PostConstruct
+	public void init() {
+		permits = new Semaphore(capacity);
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				runnable -> {
+					Thread thread = new Thread(runnable, "pdf-upload-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * Submit upload, blocking while the stage is saturated.
+	 * 
+	 * @param upload
+	 * @throws InterruptedException
+	 */
+	public void submit(Runnable upload) throws InterruptedException {
+		permits.acquire();
+		try {
+			executor.execute(() -> {
+				try {
+					upload.run();
+				} catch (RuntimeException e) {
+					log.error("", e);
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Number of uploads queued or running.
+	 * 
+	 * @return
+	 */
+	public int getPending() {
+		return capacity - permits.availablePermits();
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+			log.warn("Upload stage did not terminate, {} uploads pending", getPending());
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("pdf.pipeline.upload.pending", this, UploadStage::getPending).register(registry);
+		Gauge.builder("pdf.pipeline.upload.capacity", this, stage -> stage.capacity).register(registry);
+	}
+}
@@ -0,0 +1,31 @@
+package com.pdf.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports {@link #WARMING_UP} until the warm-up rendered all templates.
+ *
+ * The status is ordered below UP for the overall health, so liveness probes
+ * are not affected, and above UP in the {@code readiness} group, which answers
+ * 503 while warming up (see PdfGeneratorApplication).
+ */
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+	public static final Status WARMING_UP = new Status("WARMING_UP", "warm-up in progress");
+
+	@Autowired
+	private WarmupService warmupService;
+
+	@Override
+	public Health health() {
+		if (warmupService.isDone()) {
+			return Health.up().build();
+		}
+		return Health.status(WARMING_UP).build();
+	}
+}
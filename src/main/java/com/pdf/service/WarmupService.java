@@ -0,0 +1,158 @@
+package com.pdf.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdf.model.PdfJob;
+import com.pdf.service.PdfGenerator.BarcodeRendering;
+import com.pdf.service.PdfGenerator.BarcodeType;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Renders synthetic jobs for every template before the JMS listeners start, so
+ * JIT, fonts, templates and caches are warm when traffic arrives.
+ *
+ * A template may provide {@code warmup.json} with a sample message, otherwise
+ * placeholder data is used. The listeners are started once warm-up is done.
+ */
+@Log4j2
+@Component
+public class WarmupService {
+
+	@Autowired
+	private PdfGenerator pdfGenerator;
+	@Autowired
+	private JmsListenerEndpointRegistry registry;
+	@Autowired
+	private ObjectMapper mapper;
+	@Autowired
+	private InFlightTracker inFlightTracker;
+
+	@Value("${template-folder}")
+	private String templateFolder;
+	@Value("${warmup.enabled:true}")
+	private boolean enabled;
+	@Value("${warmup.iterations:5}")
+	private int iterations;
+	@Value("${spring.jms.listener.auto-startup:true}")
+	private boolean listenerAutoStartup;
+
+	private volatile boolean done;
+
+	@EventListener
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		if (!enabled) {
+			done = true;
+			return;
+		}
+		Thread thread = new Thread(this::warmup, "pdf-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	protected void warmup() {
+		long start = System.currentTimeMillis();
+		try {
+			List<String> templates = discoverTemplates();
+			log.info("Warm-up of templates {} ...", templates);
+			for (String templateName : templates) {
+				warmup(templateName);
+			}
+			log.info("Warm-up finished in {} ms", System.currentTimeMillis() - start);
+		} catch (RuntimeException e) {
+			log.error("Warm-up failed", e);
+		} finally {
+			done = true;
+			if (listenerAutoStartup && !inFlightTracker.isDraining()) {
+				log.info("Start JMS listener ...");
+				registry.start();
+			}
+		}
+	}
+
+	private void warmup(String templateName) {
+		BarcodeType[] barcodeTypes = BarcodeType.values();
+		for (int i = 0; i < iterations * barcodeTypes.length; i++) {
+			BarcodeType barcodeType = barcodeTypes[i % barcodeTypes.length];
+			BarcodeRendering rendering = BarcodeRendering.values()[(i / barcodeTypes.length) % 2];
+			try (RenderedPdf pdf = pdfGenerator.generatePdf(syntheticJob(templateName, i, barcodeType, rendering))) {
+				log.debug("Warm-up pdf - {}", pdf);
+			} catch (Exception e) {
+				log.warn("Warm-up of template failed - {} - {}", templateName, e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Template folders containing a template.html or a template.properties.
+	 * 
+	 * @return
+	 */
+	protected List<String> discoverTemplates() {
+		List<String> templates = new ArrayList<>();
+		File[] folders = new File(templateFolder).listFiles(File::isDirectory);
+		if (folders != null) {
+			for (File folder : folders) {
+				// overlay templates have no template.html
+				if (new File(folder, "template.html").isFile() || new File(folder, "template.properties").isFile()) {
+					templates.add(folder.getName());
+				}
+			}
+		}
+		return templates;
+	}
+
+	private PdfJob syntheticJob(String templateName, int iteration, BarcodeType barcodeType,
+			BarcodeRendering rendering) throws Exception {
+
+		Map<String, Object> message = new LinkedHashMap<>();
+		File sample = new File(templateFolder + templateName + "/warmup.json");
+		if (sample.isFile()) {
+			message.putAll(readSample(sample));
+		} else {
+			for (String variable : new String[] { "voucherTitle", "offerTitle", "voucherValidity", "salutation",
+					"firstname", "lastname", "company", "voucherHandling", "currency", "total", "validTo",
+					"onlineCode", "onlineCodeDesc", "pinCode", "pinCodeDesc", "conditions", "offlineCode" }) {
+				message.put(variable, "Warm-up " + variable);
+			}
+		}
+
+		message.put("templateName", templateName);
+		message.putIfAbsent("language", "en");
+		message.put("filename", "warmup-" + templateName + ".pdf");
+		message.put("returnUrl", "http://localhost/warmup");
+		message.put("orderId", "warmup");
+		message.put("positionId", "warmup");
+		message.put("voucherId", "warmup");
+		message.put("barcodeType", barcodeType.name());
+		message.put("barcode", barcodeType.sampleCode());
+		message.put("barcodeRendering", rendering.name());
+		// distinct input, so the result cache does not short-circuit the warm-up
+		message.put("warmupIteration", iteration);
+		return PdfJob.parse(mapper, mapper.writeValueAsString(message));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> readSample(File sample) throws IOException {
+		return mapper.readValue(Files.readAllBytes(sample.toPath()), Map.class);
+	}
+}